@@ -17,27 +17,29 @@
 
 package com.ben12.openhab.activity;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.ws.rs.client.InvocationCallback;
 
+import com.ben12.openhab.config.ConfigurationFile;
 import com.ben12.openhab.controller.ContentController;
 import com.ben12.openhab.controller.MainViewController;
 import com.ben12.openhab.controller.impl.TopItemsController;
 import com.ben12.openhab.model.Item;
 import com.ben12.openhab.model.Page;
+import com.ben12.openhab.peer.PanelStateSharing;
 import com.ben12.openhab.plugin.HabApplicationPlugin;
 import com.ben12.openhab.plugin.OpenHabRestClientPlugin;
 import com.ben12.openhab.rest.OpenHabRestClient;
+import com.ben12.openhab.state.ItemStateClient;
 import com.pi4j.io.gpio.GpioController;
 import com.pi4j.io.gpio.GpioFactory;
 import com.pi4j.io.gpio.GpioPin;
@@ -60,35 +62,47 @@ import javafx.stage.Window;
  */
 public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientPlugin, EventHandler<Event>, Runnable
 {
-    private static final int         MINUTES_IDLING = 1;
+    private static final Logger         LOGGER         = Logger.getLogger(ActivityHandler.class.getName());
 
-    private static final int         MINUTES_IDLE   = 9;
+    private static final int            MINUTES_IDLING = 1;
 
-    private static final int         IDLING         = 0;
+    private static final int            MINUTES_IDLE   = 9;
 
-    private static final int         IDLE           = 1;
+    private static final int            IDLING         = 0;
 
-    private static final int         PRESENT        = 2;
+    private static final int            IDLE           = 1;
 
-    private static final Pin         PIN            = RaspiPin.GPIO_01;
+    private static final int            PRESENT        = 2;
 
-    private Scene                    mainScene;
+    private static final Pin            PIN            = RaspiPin.GPIO_01;
 
-    private Parent                   mainRoot;
+    private static final int            SECONDS_SHARE  = 30;
 
-    private Parent                   idlingRoot;
+    private static final String         MODE_ITEM      = "Maison_mode";
 
-    private static ActivityHandler   instance;
+    private Scene                       mainScene;
 
-    private ScheduledExecutorService executor;
+    private Parent                      mainRoot;
 
-    private ScheduledFuture<?>       future;
+    private Parent                      idlingRoot;
 
-    private int                      idleState      = PRESENT;
+    private static ActivityHandler      instance;
 
-    private OpenHabRestClient        openHabRestClient;
+    private ScheduledThreadPoolExecutor executor;
 
-    private final GpioPinPwmOutput   pin;
+    private ScheduledFuture<?>          future;
+
+    private int                         idleState      = PRESENT;
+
+    private OpenHabRestClient           openHabRestClient;
+
+    private final GpioPinPwmOutput      pin;
+
+    private final PanelStateSharing     peers          = PanelStateSharing.getInstance();
+
+    private final ItemStateClient       stateClient    = ItemStateClient.getInstance();
+
+    private long                        lastShare      = System.nanoTime();
 
     public ActivityHandler()
     {
@@ -123,7 +137,9 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
             mainRoot = window.getScene().getRoot();
             window.addEventFilter(Event.ANY, this);
 
-            executor = Executors.newSingleThreadScheduledExecutor();
+            executor = new ScheduledThreadPoolExecutor(1);
+            // An idle timer is cancelled on each user event, remove it from the queue at once.
+            executor.setRemoveOnCancelPolicy(true);
             future = executor.schedule(this, MINUTES_IDLING, TimeUnit.MINUTES);
         }
         else
@@ -148,19 +164,7 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
 
     private void initIdlingView()
     {
-        final Properties configuration = new Properties();
-        final String config = System.getProperty("config.file");
-        if (Paths.get(config).toFile().isFile())
-        {
-            try (FileReader reader = new FileReader(config))
-            {
-                configuration.load(reader);
-            }
-            catch (final IOException e)
-            {
-                e.printStackTrace();
-            }
-        }
+        final Properties configuration = ConfigurationFile.load();
 
         final MainViewController mainViewController = new MainViewController()
         {
@@ -213,15 +217,68 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
 
     }
 
+    /**
+     * @return number of tasks waiting in the idle timer queue
+     */
+    int getPendingTasks()
+    {
+        return (executor == null ? 0 : executor.getQueue().size());
+    }
+
+    private void shareActivity(final boolean active)
+    {
+        if (peers != null)
+        {
+            lastShare = System.nanoTime();
+            peers.publishActivity(active);
+        }
+    }
+
     private boolean isPresentMode()
     {
+        if (peers != null)
+        {
+            // Someone uses another panel or another panel has recently read the mode
+            if (peers.isPeerActive(MINUTES_IDLING, TimeUnit.MINUTES))
+            {
+                return true;
+            }
+            final Boolean sharedMode = peers.getPresentMode(MINUTES_IDLING, TimeUnit.MINUTES);
+            if (sharedMode != null)
+            {
+                return sharedMode;
+            }
+        }
+
+        if (stateClient != null)
+        {
+            try
+            {
+                final String mode = stateClient.state(MODE_ITEM);
+                if (mode != null)
+                {
+                    final boolean presentMode = "0".equals(mode);
+                    if (peers != null)
+                    {
+                        peers.publishPresentMode(presentMode);
+                    }
+                    return presentMode;
+                }
+                LOGGER.warning("No state for " + MODE_ITEM + ", REST request used");
+            }
+            catch (final IOException e)
+            {
+                LOGGER.log(Level.WARNING, "Cannot read " + MODE_ITEM + " state, REST request used", e);
+            }
+        }
+
         final AtomicBoolean presentMode = new AtomicBoolean(false);
 
         if (openHabRestClient != null)
         {
             final CountDownLatch latch = new CountDownLatch(1);
 
-            openHabRestClient.item("Maison_mode", new InvocationCallback<Item>()
+            openHabRestClient.item(MODE_ITEM, new InvocationCallback<Item>()
             {
                 @Override
                 public void failed(final Throwable throwable)
@@ -233,6 +290,10 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
                 public void completed(final Item response)
                 {
                     presentMode.set("0".equals(response.getState()));
+                    if (peers != null)
+                    {
+                        peers.publishPresentMode(presentMode.get());
+                    }
                     latch.countDown();
                 }
             });
@@ -275,6 +336,8 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
                     Platform.runLater(() -> mainScene.setRoot(mainRoot));
 
                     pin.setPwm(500);
+
+                    shareActivity(true);
                 }
             }
 
@@ -282,6 +345,11 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
             {
                 future.cancel(false);
                 future = executor.schedule(this, MINUTES_IDLING, TimeUnit.MINUTES);
+
+                if (peers != null && System.nanoTime() - lastShare >= TimeUnit.SECONDS.toNanos(SECONDS_SHARE))
+                {
+                    shareActivity(true);
+                }
             }
         }
     }
@@ -291,24 +359,38 @@ public class ActivityHandler implements HabApplicationPlugin, OpenHabRestClientP
     {
         synchronized (this)
         {
-            switch (idleState)
+            if (idleState != IDLING)
             {
-            case PRESENT:
-                idleState = IDLING;
+                if (idleState == PRESENT)
+                {
+                    idleState = IDLING;
 
-                future.cancel(false);
-                future = executor.schedule(this, MINUTES_IDLE, TimeUnit.MINUTES);
+                    future.cancel(false);
+                    future = executor.schedule(this, MINUTES_IDLE, TimeUnit.MINUTES);
 
-                if (idlingRoot != null)
-                {
-                    Platform.runLater(() -> mainScene.setRoot(idlingRoot));
+                    if (idlingRoot != null)
+                    {
+                        Platform.runLater(() -> mainScene.setRoot(idlingRoot));
+                    }
+
+                    pin.setPwm(150);
+
+                    shareActivity(false);
                 }
+                return;
+            }
+        }
 
-                pin.setPwm(150);
-                break;
+        // Network requests out of the lock: input events are handled meanwhile without waiting for them
+        final boolean presentMode = isPresentMode();
 
+        synchronized (this)
+        {
+            // An input event may have woken up the panel meanwhile
+            switch (idleState)
+            {
             case IDLING:
-                if (!isPresentMode())
+                if (!presentMode)
                 {
                     idleState = IDLE;
 
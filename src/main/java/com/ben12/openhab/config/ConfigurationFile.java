@@ -0,0 +1,62 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.config;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Configuration file of the plugins, given by the <code>config.file</code> system property.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public final class ConfigurationFile
+{
+    private static final Logger LOGGER          = Logger.getLogger(ConfigurationFile.class.getName());
+
+    private static final String CONFIG_PROPERTY = "config.file";
+
+    private ConfigurationFile()
+    {
+    }
+
+    /**
+     * @return the configuration, empty if the configuration file is not set or cannot be read
+     */
+    public static Properties load()
+    {
+        final Properties configuration = new Properties();
+        final String config = System.getProperty(CONFIG_PROPERTY);
+        if (config != null && Paths.get(config).toFile().isFile())
+        {
+            try (FileReader reader = new FileReader(config))
+            {
+                configuration.load(reader);
+            }
+            catch (final IOException e)
+            {
+                LOGGER.log(Level.WARNING, "Cannot read the configuration file: " + config, e);
+            }
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,501 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Asynchronous replacement of {@link FileHandler}.
+ * <p>
+ * {@link #publish(LogRecord)} only puts the record in a bounded in-memory ring, a background thread writes the
+ * records to the file by batches and flushes once per batch. When the ring is full, records are dropped and
+ * counted instead of blocking the calling thread; the number of dropped records is written in the file as soon as
+ * possible. {@link #flush()} waits until the records already queued are written. Remaining records are written when
+ * the handler is closed (i.e. by the {@link LogManager} at JVM shutdown).
+ * <p>
+ * Configuration (in the logging properties file):
+ * <ul>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.level (default: ALL)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.formatter (default: java.util.logging.SimpleFormatter)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.encoding (default: platform encoding)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.pattern, only %g is supported (default: traces.%g.log)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.limit in bytes, 0 for no limit (default: 0)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.count (default: 1)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.capacity, ring size in records (default: 1024)</li>
+ * <li>com.ben12.openhab.logging.AsyncFileHandler.batch, maximum records per write (default: 128)</li>
+ * </ul>
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class AsyncFileHandler extends Handler implements Runnable
+{
+    private static final String            DEFAULT_PATTERN  = "traces.%g.log";
+
+    private static final int               DEFAULT_CAPACITY = 1024;
+
+    private static final int               DEFAULT_BATCH    = 128;
+
+    private static final long              CLOSE_TIMEOUT    = 5;
+
+    private final String                   pattern;
+
+    private final long                     limit;
+
+    private final int                      count;
+
+    private final int                      batchSize;
+
+    private final BlockingQueue<LogRecord> ring;
+
+    private final AtomicLong               dropped          = new AtomicLong();
+
+    private final AtomicLong               queued           = new AtomicLong();
+
+    private final Object                   flushLock        = new Object();
+
+    private long                           processed;
+
+    private final Thread                   writer;
+
+    private volatile boolean               closed           = false;
+
+    private OutputStream                   output;
+
+    private long                           written;
+
+    private long                           reported;
+
+    public AsyncFileHandler()
+    {
+        final String cname = getClass().getName();
+
+        setLevel(getLevelProperty(cname + ".level", Level.ALL));
+        setFormatter(getFormatterProperty(cname + ".formatter"));
+        try
+        {
+            setEncoding(getStringProperty(cname + ".encoding", null));
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            reportError(null, e, ErrorManager.OPEN_FAILURE);
+        }
+
+        pattern = getStringProperty(cname + ".pattern", DEFAULT_PATTERN);
+        limit = Math.max(0, getIntProperty(cname + ".limit", 0));
+        count = Math.max(1, getIntProperty(cname + ".count", 1));
+        batchSize = Math.max(1, getIntProperty(cname + ".batch", DEFAULT_BATCH));
+        ring = new ArrayBlockingQueue<>(Math.max(1, getIntProperty(cname + ".capacity", DEFAULT_CAPACITY)));
+
+        writer = new Thread(this, "AsyncFileHandler");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * @return number of records dropped because the ring was full
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    @Override
+    public void publish(final LogRecord record)
+    {
+        if (closed || !isLoggable(record))
+        {
+            return;
+        }
+
+        // Source class and method are inferred from the current stack on first access,
+        // it must be done on the calling thread.
+        record.getSourceClassName();
+
+        if (ring.offer(record))
+        {
+            queued.incrementAndGet();
+        }
+        else
+        {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until the records queued before the call are written and flushed to the file by the writer thread, at
+     * most {@value #CLOSE_TIMEOUT} seconds.
+     */
+    @Override
+    public void flush()
+    {
+        final long target = queued.get();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT);
+        synchronized (flushLock)
+        {
+            long remaining;
+            while (processed < target && writer.isAlive()
+                    && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0)
+            {
+                try
+                {
+                    flushLock.wait(remaining);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try
+        {
+            writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        final List<LogRecord> batch = new ArrayList<>(batchSize);
+
+        open();
+        while (!closed)
+        {
+            try
+            {
+                batch.add(ring.take());
+            }
+            catch (final InterruptedException e)
+            {
+                // Closing: write remaining records
+                break;
+            }
+            ring.drainTo(batch, batchSize - 1);
+            write(batch);
+            batch.clear();
+        }
+
+        while (ring.drainTo(batch, batchSize) > 0)
+        {
+            write(batch);
+            batch.clear();
+        }
+        write(batch);
+        closeOutput();
+    }
+
+    private void write(final List<LogRecord> batch)
+    {
+        if (output != null)
+        {
+            writeBatch(batch);
+
+            if (limit > 0 && written >= limit)
+            {
+                closeOutput();
+                open();
+            }
+        }
+
+        synchronized (flushLock)
+        {
+            processed += batch.size();
+            flushLock.notifyAll();
+        }
+    }
+
+    private void writeBatch(final List<LogRecord> batch)
+    {
+        try
+        {
+            writeDropped();
+
+            final Formatter formatter = getFormatter();
+            for (final LogRecord record : batch)
+            {
+                final String message;
+                try
+                {
+                    message = formatter.format(record);
+                }
+                catch (final Exception e)
+                {
+                    reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                    continue;
+                }
+                writeString(message);
+            }
+            output.flush();
+        }
+        catch (final IOException e)
+        {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void writeDropped() throws IOException
+    {
+        final long lost = dropped.get() - reported;
+        if (lost > 0)
+        {
+            reported += lost;
+
+            final LogRecord record = new LogRecord(Level.WARNING, lost + " log records dropped");
+            record.setLoggerName(getClass().getName());
+            record.setSourceClassName(getClass().getName());
+            record.setSourceMethodName("publish");
+            writeString(getFormatter().format(record));
+        }
+    }
+
+    private void writeString(final String message) throws IOException
+    {
+        final String encoding = getEncoding();
+        final byte[] bytes = (encoding == null ? message.getBytes(Charset.defaultCharset())
+                : message.getBytes(encoding));
+        output.write(bytes);
+        written += bytes.length;
+    }
+
+    private File generate(final int generation)
+    {
+        return new File(pattern.replace("%g", Integer.toString(generation)));
+    }
+
+    private void open()
+    {
+        try
+        {
+            for (int i = count - 2; i >= 0; i--)
+            {
+                final File file = generate(i);
+                if (file.isFile())
+                {
+                    final File next = generate(i + 1);
+                    Files.deleteIfExists(next.toPath());
+                    if (!file.renameTo(next))
+                    {
+                        reportError("Cannot rotate " + file, null, ErrorManager.OPEN_FAILURE);
+                    }
+                }
+            }
+
+            final File file = generate(0);
+            output = new BufferedOutputStream(new FileOutputStream(file));
+            written = 0;
+
+            final String head = getFormatter().getHead(this);
+            if (head != null)
+            {
+                writeString(head);
+            }
+        }
+        catch (final IOException e)
+        {
+            reportError(null, e, ErrorManager.OPEN_FAILURE);
+            output = null;
+        }
+    }
+
+    private void closeOutput()
+    {
+        if (output != null)
+        {
+            try
+            {
+                final String tail = getFormatter().getTail(this);
+                if (tail != null)
+                {
+                    writeString(tail);
+                }
+                output.close();
+            }
+            catch (final IOException e)
+            {
+                reportError(null, e, ErrorManager.CLOSE_FAILURE);
+            }
+            output = null;
+        }
+    }
+
+    private static String getStringProperty(final String name, final String defaultValue)
+    {
+        final String value = LogManager.getLogManager().getProperty(name);
+        return (value == null ? defaultValue : value.trim());
+    }
+
+    private static int getIntProperty(final String name, final int defaultValue)
+    {
+        final String value = LogManager.getLogManager().getProperty(name);
+        if (value != null)
+        {
+            try
+            {
+                return Integer.parseInt(value.trim());
+            }
+            catch (final NumberFormatException e)
+            {
+                // default value
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Level getLevelProperty(final String name, final Level defaultValue)
+    {
+        final String value = LogManager.getLogManager().getProperty(name);
+        if (value != null)
+        {
+            try
+            {
+                return Level.parse(value.trim());
+            }
+            catch (final IllegalArgumentException e)
+            {
+                // default value
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Formatter getFormatterProperty(final String name)
+    {
+        final String value = LogManager.getLogManager().getProperty(name);
+        if (value != null)
+        {
+            try
+            {
+                return (Formatter) ClassLoader.getSystemClassLoader().loadClass(value.trim())
+                        .getDeclaredConstructor()
+                        .newInstance();
+            }
+            catch (final ReflectiveOperationException | ClassCastException e)
+            {
+                // default formatter
+            }
+        }
+        return new SimpleFormatter();
+    }
+
+    /**
+     * Measures the logging latency seen by the calling thread with {@link FileHandler} and with
+     * {@link AsyncFileHandler}.
+     *
+     * @param args
+     *            [records count] [output directory]
+     * @throws IOException
+     *             if a log file cannot be created
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int records = (args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+        final File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+
+        final String syncPattern = new File(directory, "latency-sync.%g.log").getPath();
+        final String asyncPattern = new File(directory, "latency-async.%g.log").getPath();
+
+        final FileHandler fileHandler = new FileHandler(syncPattern);
+        fileHandler.setFormatter(new SimpleFormatter());
+        measure("FileHandler", fileHandler, records);
+
+        final String cname = AsyncFileHandler.class.getName();
+        // Ring sized to the records count: no record is dropped, all the records are written
+        final String config = cname + ".pattern=" + asyncPattern.replace("\\", "/") + "\n" + cname + ".capacity="
+                + records + "\n";
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(config.getBytes(StandardCharsets.ISO_8859_1)));
+        final AsyncFileHandler asyncHandler = new AsyncFileHandler();
+        measure("AsyncFileHandler", asyncHandler, records);
+    }
+
+    private static void measure(final String name, final Handler handler, final int records)
+    {
+        final Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.ALL);
+        logger.addHandler(handler);
+
+        final long[] latencies = new long[records];
+        for (int i = 0; i < records; i++)
+        {
+            final int n = i;
+            final long start = System.nanoTime();
+            logger.fine(() -> "Item state sent: Salon_Temperature2=" + n);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        final long flushStart = System.nanoTime();
+        handler.flush();
+        final long flushTime = System.nanoTime() - flushStart;
+        handler.close();
+        final long dropped = (handler instanceof AsyncFileHandler ? ((AsyncFileHandler) handler).getDroppedCount()
+                : 0);
+
+        Arrays.sort(latencies);
+        long sum = 0;
+        for (final long latency : latencies)
+        {
+            sum += latency;
+        }
+        System.out.println(name + ": mean=" + TimeUnit.NANOSECONDS.toMicros(sum / records) + "us, p50="
+                + TimeUnit.NANOSECONDS.toMicros(latencies[records / 2]) + "us, p99="
+                + TimeUnit.NANOSECONDS.toMicros(latencies[(int) (records * 0.99)]) + "us, max="
+                + TimeUnit.NANOSECONDS.toMicros(latencies[records - 1]) + "us, flush="
+                + TimeUnit.NANOSECONDS.toMillis(flushTime) + "ms, dropped=" + dropped + "/" + records);
+    }
+}
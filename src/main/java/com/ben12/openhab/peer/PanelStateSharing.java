@@ -0,0 +1,535 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.peer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares the panel state with the other panels of the house over UDP multicast.
+ * <p>
+ * Each panel broadcasts its activity (a user is using it), the present mode read from openHAB and the sensor states
+ * it submits to openHAB. Messages are small binary datagrams (big endian):
+ * <ul>
+ * <li>magic (short), version (byte), type (byte), panel identifier (long), sender timestamp in milliseconds
+ * (long)</li>
+ * <li>{@link #ACTIVITY} and {@link #PRESENT_MODE}: value (byte, 0 or 1)</li>
+ * <li>{@link #SENSOR}: item name length (short), item name (UTF-8), value (float)</li>
+ * </ul>
+ * For each panel and state key, the message with the latest sender timestamp wins; older messages received out of
+ * order are ignored, unless the previous one was received more than {@value #REORDER_WINDOW} seconds ago (the sender
+ * clock went back, e.g. a Raspberry Pi without RTC restarting). Sender clocks are not compared with each other: the
+ * latest state among several panels, and the age of a state, are measured with the local clock, when the message was
+ * received. States not received for {@value #STALE_AGE} hour are removed.
+ * <p>
+ * The panel identifier is the MAC address of the multicast network interface, so it is the same after a restart. If
+ * the interface has no MAC address, it is a random identifier saved in a file.
+ * <p>
+ * Enabled by the system property <code>peer.group</code> (multicast group address), optional properties are
+ * <code>peer.port</code>, <code>peer.interface</code> (network interface name, default: the first network interface
+ * up, with multicast, which is not a loopback) and <code>peer.idFile</code> (panel identifier file, default:
+ * <code>panel.id</code>).
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class PanelStateSharing implements Closeable, Runnable
+{
+    private static final Logger             LOGGER         = Logger.getLogger(PanelStateSharing.class.getName());
+
+    private static final String             GROUP_PROPERTY = "peer.group";
+
+    private static final String             PORT_PROPERTY  = "peer.port";
+
+    private static final String             NIF_PROPERTY   = "peer.interface";
+
+    private static final String             ID_PROPERTY    = "peer.idFile";
+
+    private static final String             DEFAULT_ID     = "panel.id";
+
+    private static final int                DEFAULT_PORT   = 4712;
+
+    private static final short              MAGIC          = (short) 0xB12E;
+
+    private static final byte               VERSION        = 1;
+
+    private static final int                MAX_SIZE       = 512;
+
+    // Hours after which a state not received again is removed
+    private static final long               STALE_AGE      = 1;
+
+    // Seconds after which a message older than the previous one of the same panel is accepted
+    private static final long               REORDER_WINDOW = 10;
+
+    public static final byte                ACTIVITY       = 1;
+
+    public static final byte                PRESENT_MODE   = 2;
+
+    public static final byte                SENSOR         = 3;
+
+    private static PanelStateSharing        instance;
+
+    private static boolean                  initialized    = false;
+
+    private final long                      panelId;
+
+    private final MulticastSocket           socket;
+
+    private final InetSocketAddress         group;
+
+    private final Thread                    receiver;
+
+    private final ByteBuffer                sendBuffer     = ByteBuffer.allocate(MAX_SIZE);
+
+    private final Map<String, PeerState>    states         = new ConcurrentHashMap<>();
+
+    private volatile boolean                closed         = false;
+
+    private long                            lastPrune      = System.nanoTime();
+
+    /**
+     * A state received from a peer panel.
+     */
+    public static class PeerState
+    {
+        private final long   panelId;
+
+        private final byte   type;
+
+        private final String name;
+
+        private final long   timestamp;
+
+        private final long   received;
+
+        private final float  value;
+
+        PeerState(final long panelId, final byte type, final String name, final long timestamp, final float value)
+        {
+            this.panelId = panelId;
+            this.type = type;
+            this.name = name;
+            this.timestamp = timestamp;
+            this.value = value;
+            received = System.nanoTime();
+        }
+
+        public long getPanelId()
+        {
+            return panelId;
+        }
+
+        /**
+         * @return {@link #ACTIVITY}, {@link #PRESENT_MODE} or {@link #SENSOR}
+         */
+        public byte getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return item name of a {@link #SENSOR} state, null otherwise
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return sender timestamp in milliseconds
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public float getValue()
+        {
+            return value;
+        }
+
+        /**
+         * @return local reception time, as given by {@link System#nanoTime()}
+         */
+        public long getReceived()
+        {
+            return received;
+        }
+
+        /**
+         * @return true if the state was received less than <code>maxAge</code> ago
+         */
+        public boolean isFresh(final long maxAge, final TimeUnit unit)
+        {
+            return System.nanoTime() - received <= unit.toNanos(maxAge);
+        }
+    }
+
+    /**
+     * @param group
+     *            multicast group address
+     * @param port
+     *            multicast port
+     * @param networkInterface
+     *            network interface to use, null for the system default
+     * @param panelId
+     *            identifier of this panel, must be unique in the house
+     * @throws IOException
+     *             if the multicast socket cannot be opened
+     */
+    public PanelStateSharing(final InetAddress group, final int port, final NetworkInterface networkInterface,
+            final long panelId) throws IOException
+    {
+        this.panelId = panelId;
+        this.group = new InetSocketAddress(group, port);
+
+        socket = new MulticastSocket(port);
+        try
+        {
+            if (networkInterface != null)
+            {
+                socket.setNetworkInterface(networkInterface);
+            }
+            // Panels may run on the same host (false enables the loopback)
+            socket.setLoopbackMode(false);
+            socket.joinGroup(this.group, networkInterface);
+        }
+        catch (final IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        receiver = new Thread(this, "PanelStateSharing");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * @return the shared instance configured by system properties, or null if the sharing is disabled or cannot be
+     *         started
+     */
+    public static synchronized PanelStateSharing getInstance()
+    {
+        if (!initialized)
+        {
+            initialized = true;
+
+            final String groupAddress = System.getProperty(GROUP_PROPERTY);
+            if (groupAddress != null)
+            {
+                try
+                {
+                    final String nif = System.getProperty(NIF_PROPERTY);
+                    final NetworkInterface networkInterface = (nif == null ? multicastInterface()
+                            : NetworkInterface.getByName(nif));
+                    instance = new PanelStateSharing(InetAddress.getByName(groupAddress),
+                            Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT), networkInterface,
+                            localPanelId(networkInterface));
+                }
+                catch (final IOException e)
+                {
+                    LOGGER.log(Level.WARNING, "Panel state sharing disabled", e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the first network interface up, with multicast, which is not a loopback, or null if none
+     */
+    private static NetworkInterface multicastInterface() throws IOException
+    {
+        NetworkInterface first = null;
+        for (final NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces()))
+        {
+            if (networkInterface.isUp() && networkInterface.supportsMulticast() && !networkInterface.isLoopback()
+                    && !networkInterface.isVirtual()
+                    && (first == null || networkInterface.getIndex() < first.getIndex()))
+            {
+                first = networkInterface;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @param networkInterface
+     *            multicast network interface, null if unknown
+     * @return MAC address of the network interface, or a random identifier saved in the panel identifier file
+     * @throws IOException
+     *             if the panel identifier file cannot be read or written
+     */
+    private static long localPanelId(final NetworkInterface networkInterface) throws IOException
+    {
+        final byte[] mac = (networkInterface == null ? null : networkInterface.getHardwareAddress());
+        if (mac != null && mac.length > 0)
+        {
+            long id = 0;
+            for (final byte b : mac)
+            {
+                id = (id << 8) | (b & 0xFF);
+            }
+            return id;
+        }
+
+        // Not derived from the host name: panels often keep the default one
+        final Path idFile = Paths.get(System.getProperty(ID_PROPERTY, DEFAULT_ID));
+        if (Files.isRegularFile(idFile))
+        {
+            final String saved = new String(Files.readAllBytes(idFile), StandardCharsets.US_ASCII).trim();
+            try
+            {
+                return Long.parseUnsignedLong(saved, 16);
+            }
+            catch (final NumberFormatException e)
+            {
+                LOGGER.log(Level.WARNING, "Invalid panel identifier replaced: " + saved, e);
+            }
+        }
+        final long id = UUID.randomUUID().getMostSignificantBits();
+        Files.write(idFile, Long.toHexString(id).getBytes(StandardCharsets.US_ASCII));
+        LOGGER.info(() -> "New panel identifier saved in " + idFile.toAbsolutePath());
+        return id;
+    }
+
+    public long getPanelId()
+    {
+        return panelId;
+    }
+
+    /**
+     * @param active
+     *            true if a user is using this panel
+     */
+    public void publishActivity(final boolean active)
+    {
+        send(ACTIVITY, null, (active ? 1 : 0));
+    }
+
+    /**
+     * @param present
+     *            present mode read from openHAB
+     */
+    public void publishPresentMode(final boolean present)
+    {
+        send(PRESENT_MODE, null, (present ? 1 : 0));
+    }
+
+    /**
+     * @param itemName
+     *            openHAB item name of the sensor
+     * @param value
+     *            sensor state submitted to openHAB
+     */
+    public void publishSensor(final String itemName, final float value)
+    {
+        send(SENSOR, itemName, value);
+    }
+
+    /**
+     * @return true if a user was using another panel less than <code>maxAge</code> ago
+     */
+    public boolean isPeerActive(final long maxAge, final TimeUnit unit)
+    {
+        for (final PeerState state : states.values())
+        {
+            if (state.getType() == ACTIVITY && state.getValue() != 0 && state.isFresh(maxAge, unit))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the present mode received last, less than <code>maxAge</code> ago, or null if none
+     */
+    public Boolean getPresentMode(final long maxAge, final TimeUnit unit)
+    {
+        final PeerState state = latest(PRESENT_MODE, null, maxAge, unit);
+        return (state == null ? null : state.getValue() != 0);
+    }
+
+    /**
+     * @return the sensor state received last, less than <code>maxAge</code> ago, or null if none
+     */
+    public PeerState getSensor(final String itemName, final long maxAge, final TimeUnit unit)
+    {
+        return latest(SENSOR, itemName, maxAge, unit);
+    }
+
+    private PeerState latest(final byte type, final String name, final long maxAge, final TimeUnit unit)
+    {
+        PeerState latest = null;
+        for (final PeerState state : states.values())
+        {
+            if (state.getType() == type && Objects.equals(state.getName(), name) && state.isFresh(maxAge, unit)
+                    && (latest == null || state.getReceived() - latest.getReceived() > 0))
+            {
+                latest = state;
+            }
+        }
+        return latest;
+    }
+
+    private static String key(final long panelId, final byte type, final String name)
+    {
+        return Long.toHexString(panelId) + ":" + type + (name == null ? "" : ":" + name);
+    }
+
+    private void send(final byte type, final String name, final float value)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        synchronized (sendBuffer)
+        {
+            sendBuffer.clear();
+            sendBuffer.putShort(MAGIC).put(VERSION).put(type).putLong(panelId).putLong(System.currentTimeMillis());
+            if (type == SENSOR)
+            {
+                final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                sendBuffer.putShort((short) bytes.length).put(bytes).putFloat(value);
+            }
+            else
+            {
+                sendBuffer.put((byte) value);
+            }
+
+            try
+            {
+                socket.send(new DatagramPacket(sendBuffer.array(), sendBuffer.position(), group));
+            }
+            catch (final IOException e)
+            {
+                LOGGER.log(Level.FINE, "Cannot send panel state", e);
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        final byte[] data = new byte[MAX_SIZE];
+        final DatagramPacket packet = new DatagramPacket(data, data.length);
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        while (!closed)
+        {
+            try
+            {
+                packet.setLength(data.length);
+                socket.receive(packet);
+
+                buffer.clear();
+                buffer.limit(packet.getLength());
+                receive(buffer);
+            }
+            catch (final IOException e)
+            {
+                if (!closed)
+                {
+                    LOGGER.log(Level.WARNING, "Panel state reception error", e);
+                }
+            }
+        }
+    }
+
+    private void receive(final ByteBuffer buffer)
+    {
+        try
+        {
+            if (buffer.getShort() != MAGIC || buffer.get() != VERSION)
+            {
+                return;
+            }
+
+            final byte type = buffer.get();
+            final long id = buffer.getLong();
+            final long timestamp = buffer.getLong();
+            if (id == panelId)
+            {
+                return;
+            }
+
+            final String name;
+            final float value;
+            if (type == SENSOR)
+            {
+                final byte[] bytes = new byte[buffer.getShort()];
+                buffer.get(bytes);
+                name = new String(bytes, StandardCharsets.UTF_8);
+                value = buffer.getFloat();
+            }
+            else if (type == ACTIVITY || type == PRESENT_MODE)
+            {
+                name = null;
+                value = buffer.get();
+            }
+            else
+            {
+                return;
+            }
+
+            final PeerState state = new PeerState(id, type, name, timestamp, value);
+            states.merge(key(id, type, name), state,
+                    (previous, current) -> (current.getTimestamp() >= previous.getTimestamp()
+                            || !previous.isFresh(REORDER_WINDOW, TimeUnit.SECONDS) ? current : previous));
+
+            // Panels which stopped or restarted with another identifier
+            if (System.nanoTime() - lastPrune > TimeUnit.MINUTES.toNanos(1))
+            {
+                lastPrune = System.nanoTime();
+                states.values().removeIf(previous -> !previous.isFresh(STALE_AGE, TimeUnit.HOURS));
+            }
+        }
+        catch (final BufferUnderflowException | NegativeArraySizeException e)
+        {
+            LOGGER.fine("Malformed panel state message");
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        socket.close();
+    }
+}
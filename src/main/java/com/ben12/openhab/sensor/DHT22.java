@@ -17,9 +17,18 @@
 
 package com.ben12.openhab.sensor;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,41 +38,90 @@ import com.pi4j.io.gpio.GpioPinDigitalMultipurpose;
 import com.pi4j.io.gpio.Pin;
 import com.pi4j.io.gpio.PinMode;
 import com.pi4j.io.gpio.RaspiPin;
-import com.pi4j.wiringpi.Gpio;
 
 import javafx.application.Platform;
 
 public class DHT22
 {
-    private static final Logger              LOGGER       = Logger.getLogger(DHT22.class.getName());
+    private static final Logger              LOGGER         = Logger.getLogger(DHT22.class.getName());
 
-    private static final Pin                 PIN          = RaspiPin.GPIO_02;
+    private static final Pin                 PIN            = RaspiPin.GPIO_02;
 
     // This is the only processor specific magic value, the maximum amount of time to
     // spin in a loop before bailing out and considering the read a timeout. This should
     // be a high value, but if you're running on a much faster platform than a Raspberry
     // Pi or Beaglebone Black then it might need to be increased.
-    private static final int                 DHT_MAXCOUNT = 32000;
+    static final int                         DHT_MAXCOUNT   = 32000;
 
     // Number of bit pulses to expect from the DHT. Note that this is 41 because
     // the first pulse is a constant 50 microsecond pulse, with 40 pulses to represent
     // the data afterwards.
-    private static final int                 DHT_PULSES   = 41;
+    private static final int                 DHT_PULSES     = 41;
 
-    private static final int                 BUFFER_SIZE  = DHT_PULSES * 2;
+    static final int                         BUFFER_SIZE    = DHT_PULSES * 2;
 
-    private static final long                DELAY        = 500;
+    // Pulse counts between two interruption checks of the capture loops, minus one.
+    private static final int                 CHECK_MASK     = 0x3FF;
+
+    // Maximum delay in milliseconds for a cancelled capture to stop before its thread is abandoned.
+    private static final long                STOP_TIMEOUT   = 1000;
+
+    // Minimum delay between two mesures in milliseconds.
+    private static final long                DELAY          = 500;
+
+    // Duration in milliseconds of the low start pulse which asks the sensor for a mesure.
+    private static final long                START_PULSE    = 20;
+
+    // System property giving the file where raw pulses are recorded, no record if not set.
+    private static final String              TRACE_PROPERTY = "dht22.trace";
+
+    // System property giving the CPU core where the capture thread is pinned, not pinned if not set.
+    private static final String              CPU_PROPERTY   = "dht22.cpu";
+
+    // System property giving the SCHED_FIFO priority (1-99) of the capture thread, normal scheduling if not set.
+    private static final String              FIFO_PROPERTY  = "dht22.fifo";
 
     private final GpioPinDigitalMultipurpose pin;
 
-    private float                            temperature;
+    private final long                       delay;
+
+    private final long                       startPulse;
+
+    private final boolean                    pauseUi;
+
+    private volatile ThreadPoolExecutor      captureExecutor;
 
-    private float                            humidity;
+    private volatile float                   temperature;
 
-    private long                             nextMessure;
+    private volatile float                   humidity;
+
+    private volatile long                    nextMessure;
+
+    // Pulse widths of the last finished capture.
+    private int[]                            lastPulseCounts;
+
+    private DHT22TraceRecorder               recorder;
 
     public DHT22()
     {
+        this(DELAY, START_PULSE, true);
+    }
+
+    /**
+     * @param delay
+     *            minimum delay between two mesures in milliseconds, shorter than the sensor needs for a simulated
+     *            sensor only
+     * @param startPulse
+     *            duration in milliseconds of the start pulse, shorter than the sensor needs for a simulated sensor only
+     * @param pauseUi
+     *            true to pause the UI treatments during the captures
+     */
+    DHT22(final long delay, final long startPulse, final boolean pauseUi)
+    {
+        this.delay = delay;
+        this.startPulse = startPulse;
+        this.pauseUi = pauseUi;
+
         final GpioController controller = GpioFactory.getInstance();
         pin = controller.provisionDigitalMultipurposePin(PIN, PinMode.DIGITAL_OUTPUT);
 
@@ -72,7 +130,61 @@ public class DHT22
 
         // Set pin high for ~500 microseconds.
         pin.high();
-        nextMessure = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + DELAY;
+        nextMessure = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + delay;
+
+        final String traceFile = System.getProperty(TRACE_PROPERTY);
+        if (traceFile != null)
+        {
+            try
+            {
+                recorder = new DHT22TraceRecorder(Paths.get(traceFile), BUFFER_SIZE, DHT_MAXCOUNT);
+            }
+            catch (final IOException e)
+            {
+                LOGGER.log(Level.WARNING, "Cannot open DHT22 trace file: " + traceFile, e);
+            }
+        }
+
+        captureExecutor = newCaptureExecutor();
+    }
+
+    // The same capture thread is used for all mesures until a capture gets stuck, it is isolated once.
+    private static ThreadPoolExecutor newCaptureExecutor()
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "DHT22");
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.execute(DHT22::isolateCaptureThread);
+        return executor;
+    }
+
+    private static void isolateCaptureThread()
+    {
+        final Integer cpu = Integer.getInteger(CPU_PROPERTY);
+        if (cpu != null)
+        {
+            ThreadIsolation.setAffinity(cpu);
+        }
+
+        // The SCHED_FIFO policy is kept by the capture thread for its whole life,
+        // it costs nothing while the thread is parked waiting for mesure requests.
+        final Integer fifo = Integer.getInteger(FIFO_PROPERTY);
+        if (fifo != null)
+        {
+            ThreadIsolation.setFifoPriority(fifo);
+        }
+    }
+
+    /**
+     * @return number of captures waiting for the capture thread
+     */
+    int getPendingCaptures()
+    {
+        return captureExecutor.getQueue().size();
     }
 
     public float getTemperature()
@@ -85,6 +197,28 @@ public class DHT22
         return humidity;
     }
 
+    // Same as wiringPi delay() but without native library, so the driver also runs on a simulated GPIO provider.
+    private static void delay(final long millis)
+    {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining = end - System.nanoTime();
+        while (remaining > 0)
+        {
+            LockSupport.parkNanos(remaining);
+            remaining = end - System.nanoTime();
+        }
+    }
+
+    // Same as wiringPi delayMicroseconds() for short delays: busy wait.
+    private static void delayMicroseconds(final long micros)
+    {
+        final long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (end - System.nanoTime() > 0)
+        {
+            // Busy wait
+        }
+    }
+
     private int countLowPulse()
     {
         int count = 0;
@@ -95,6 +229,11 @@ public class DHT22
                 // Timeout waiting for response.
                 return -1;
             }
+            if ((count & CHECK_MASK) == 0 && Thread.currentThread().isInterrupted())
+            {
+                // Capture cancelled.
+                return -1;
+            }
         }
         return count;
     }
@@ -109,19 +248,24 @@ public class DHT22
                 // Timeout waiting for response.
                 return -1;
             }
+            if ((count & CHECK_MASK) == 0 && Thread.currentThread().isInterrupted())
+            {
+                // Capture cancelled.
+                return -1;
+            }
         }
         return count;
     }
 
-    private int askForMesure(final AtomicInteger result)
+    private int askForMesure()
     {
         // Set pin low for ~20 milliseconds.
         pin.low();
-        Gpio.delay(20);
+        delay(startPulse);
 
         // Set pin at input.
         pin.setMode(PinMode.DIGITAL_INPUT);
-        Gpio.delayMicroseconds(10);
+        delayMicroseconds(10);
 
         // Wait for DHT to pull pin low.
         final int count = countHighPulse();
@@ -157,153 +301,283 @@ public class DHT22
         return 0;
     }
 
-    public synchronized int read()
+    /**
+     * Decodes the pulse widths recorded from the sensor.
+     *
+     * @param pulseCounts
+     *            low and high pulse widths
+     * @param mesures
+     *            receives the humidity at index 0 and the temperature at index 1
+     * @return 0 on success, 4 on checksum error
+     */
+    static int decode(final int[] pulseCounts, final float[] mesures)
     {
-        final AtomicInteger result = new AtomicInteger(10);
+        final int[] data = new int[5];
+
+        // Compute the average low pulse width to use as a 50 microsecond reference threshold.
+        // Ignore the first two readings because they are a constant 80 microsecond pulse.
+        long threshold = 0;
+        for (int i = 2; i < BUFFER_SIZE; i += 2)
+        {
+            threshold += pulseCounts[i];
+        }
+        threshold /= DHT_PULSES - 1;
+
+        // Interpret each high pulse as a 0 or 1 by comparing it to the 50us reference.
+        // If the count is less than 50us it must be a ~28us 0 pulse, and if it's higher
+        // then it must be a ~70us 1 pulse.
+        for (int i = 3; i < BUFFER_SIZE; i += 2)
+        {
+            final int index = (i - 3) / 16;
+            data[index] <<= 1;
+            if (pulseCounts[i] >= threshold)
+            {
+                // One bit for long pulse.
+                data[index] |= 1;
+            }
+            // Else zero bit for short pulse.
+        }
+
+        // Verify checksum of received data.
+        if (data[4] == ((data[0] + data[1] + data[2] + data[3]) & 0xFF))
+        {
+            // Calculate humidity and temp for DHT22 sensor.
+            mesures[0] = (data[0] * 256 + data[1]) / 10.0f;
+            mesures[1] = ((data[2] & 0x7F) * 256 + data[3]) / 10.0f;
+            if ((data[2] & 0x80) != 0)
+            {
+                mesures[1] *= -1.0f;
+            }
+            return 0;
+        }
+        return 4;
+    }
 
+    /**
+     * One capture with its own pulse buffer, so a cancelled capture which is still running never shares its buffer
+     * with the next one.
+     */
+    private final class Capture implements Runnable
+    {
         // Store the count that each DHT bit pulse is low and high.
-        // Make sure array is initialized to start at zero.
-        final int[] pulseCounts = new int[BUFFER_SIZE];
+        private final int[]          pulseCounts = new int[BUFFER_SIZE];
 
-        final int[] data = new int[5];
+        private final CountDownLatch finished    = new CountDownLatch(1);
+
+        private volatile boolean     started     = false;
 
-        final Thread t = new Thread("DHT22")
+        private volatile boolean     abandoned   = false;
+
+        private volatile int         result      = 10;
+
+        @Override
+        public void run()
         {
-            @Override
-            public void run()
+            started = true;
+            try
             {
-                try
+                final int askResult = askForMesure();
+                if (askResult != 0)
                 {
-                    final int askResult = askForMesure(result);
-                    if (askResult != 0)
-                    {
-                        result.set(askResult);
-                        return;
-                    }
-
-                    final int recResult = recordPulseWidths(pulseCounts);
-                    if (recResult != 0)
-                    {
-                        result.set(recResult);
-                        return;
-                    }
-
-                    // Compute the average low pulse width to use as a 50 microsecond reference threshold.
-                    // Ignore the first two readings because they are a constant 80 microsecond pulse.
-                    long threshold = 0;
-                    for (int i = 2; i < BUFFER_SIZE; i += 2)
-                    {
-                        threshold += pulseCounts[i];
-                    }
-                    threshold /= DHT_PULSES - 1;
-
-                    // Interpret each high pulse as a 0 or 1 by comparing it to the 50us reference.
-                    // If the count is less than 50us it must be a ~28us 0 pulse, and if it's higher
-                    // then it must be a ~70us 1 pulse.
-                    for (int i = 3; i < BUFFER_SIZE; i += 2)
-                    {
-                        final int index = (i - 3) / 16;
-                        data[index] <<= 1;
-                        if (pulseCounts[i] >= threshold)
-                        {
-                            // One bit for long pulse.
-                            data[index] |= 1;
-                        }
-                        // Else zero bit for short pulse.
-                    }
-
-                    // Verify checksum of received data.
-                    if (data[4] == ((data[0] + data[1] + data[2] + data[3]) & 0xFF))
-                    {
-                        // Calculate humidity and temp for DHT22 sensor.
-                        humidity = (data[0] * 256 + data[1]) / 10.0f;
-                        temperature = ((data[2] & 0x7F) * 256 + data[3]) / 10.0f;
-                        if ((data[2] & 0x80) != 0)
-                        {
-                            temperature *= -1.0f;
-                        }
-                        result.set(0);
-                        return;
-                    }
-                    else
-                    {
-                        result.set(4);
-                        return;
-                    }
+                    result = askResult;
+                    return;
                 }
-                catch (final Exception e)
+
+                final int recResult = recordPulseWidths(pulseCounts);
+                if (recResult != 0)
                 {
-                    LOGGER.log(Level.SEVERE, "", e);
-                    result.set(5);
+                    result = recResult;
+                    return;
                 }
-                finally
+
+                final float[] mesures = new float[2];
+                final int decodeResult = decode(pulseCounts, mesures);
+                if (decodeResult == 0 && !abandoned)
+                {
+                    humidity = mesures[0];
+                    temperature = mesures[1];
+                }
+                result = decodeResult;
+            }
+            catch (final Exception e)
+            {
+                LOGGER.log(Level.SEVERE, "", e);
+                result = 5;
+            }
+            finally
+            {
+                // The pin belongs to the next capture once this one is abandoned.
+                if (!abandoned)
                 {
                     // Set pin to output.
                     pin.setMode(PinMode.DIGITAL_OUTPUT);
 
                     // Set pin high for ~500 milliseconds.
                     pin.high();
-                    nextMessure = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + DELAY;
+                    nextMessure = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + delay;
                 }
+                finished.countDown();
             }
-        };
+        }
 
-        t.setPriority(Thread.MAX_PRIORITY);
+        boolean isFinished()
+        {
+            return finished.getCount() == 0;
+        }
+
+        /**
+         * Cancels the capture and waits for its end. A capture which does not stop is abandoned with its thread,
+         * next captures use a new thread.
+         */
+        void cancel(final Future<?> future)
+        {
+            future.cancel(true);
+
+            // A capture cancelled before its start never runs.
+            boolean stopped = !started;
+            if (!stopped)
+            {
+                try
+                {
+                    stopped = finished.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (!stopped)
+            {
+                LOGGER.severe("DHT22 capture does not stop, capture thread replaced");
+                abandoned = true;
+                captureExecutor.shutdownNow();
+                captureExecutor = newCaptureExecutor();
+
+                // Set pin to output, as the abandoned capture does not.
+                pin.setMode(PinMode.DIGITAL_OUTPUT);
+                pin.high();
+                nextMessure = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + delay;
+            }
+        }
+    }
+
+    public synchronized int read()
+    {
+        final Capture capture = new Capture();
 
         final long remaining = nextMessure - TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
         if (remaining > 0)
         {
-            Gpio.delay(remaining);
+            delay(remaining);
         }
 
+        final long timestamp = System.currentTimeMillis();
+
+        Future<?> future = null;
         try
         {
             try
             {
-                if (!Platform.isFxApplicationThread())
+                if (pauseUi && !Platform.isFxApplicationThread())
                 {
                     final CountDownLatch latch = new CountDownLatch(1);
+                    final AtomicReference<Future<?>> submitted = new AtomicReference<>();
 
                     // Pause UI treatments
                     Platform.runLater(() -> {
-                        t.start();
+                        final Future<?> captureFuture = captureExecutor.submit(capture);
+                        submitted.set(captureFuture);
                         latch.countDown();
                         try
                         {
-                            t.join(2000);
+                            captureFuture.get(2000, TimeUnit.MILLISECONDS);
                         }
-                        catch (final InterruptedException e)
+                        catch (final InterruptedException | ExecutionException e)
                         {
                             LOGGER.log(Level.SEVERE, "", e);
                         }
+                        catch (final TimeoutException | CancellationException e)
+                        {
+                            // Resume UI treatments
+                        }
                     });
 
                     latch.await();
+                    future = submitted.get();
                 }
                 else
                 {
-                    t.start();
+                    future = captureExecutor.submit(capture);
                 }
             }
             catch (final IllegalStateException e)
             {
                 // No UI
-                t.start();
+                future = captureExecutor.submit(capture);
             }
 
-            t.join(10000);
-            if (t.isAlive())
+            future.get(10000, TimeUnit.MILLISECONDS);
+        }
+        catch (final TimeoutException e)
+        {
+            LOGGER.log(Level.SEVERE, "DHT22 capture timeout", e);
+            capture.cancel(future);
+        }
+        catch (final InterruptedException e)
+        {
+            LOGGER.log(Level.SEVERE, "", e);
+            Thread.currentThread().interrupt();
+            if (future != null)
             {
-                t.interrupt();
-                t.join(10000);
+                capture.cancel(future);
             }
         }
-        catch (final InterruptedException e)
+        catch (final ExecutionException e)
         {
             LOGGER.log(Level.SEVERE, "", e);
         }
 
-        return result.get();
+        // Pulse widths are only read once the capture thread has written its last one.
+        if (!capture.isFinished())
+        {
+            return 10;
+        }
+
+        lastPulseCounts = capture.pulseCounts;
+        if (recorder != null)
+        {
+            recorder.record(timestamp, capture.result, capture.pulseCounts);
+        }
+
+        return capture.result;
+    }
+
+    /**
+     * Timing jitter of a capture: coefficient of variation, in percent, of the 40 data low pulses which all last
+     * 50 microseconds. Preemption of the capture loop increases it.
+     *
+     * @param pulseCounts
+     *            low and high pulse widths
+     * @return jitter in percent
+     */
+    static double jitter(final int[] pulseCounts)
+    {
+        double mean = 0;
+        for (int i = 2; i < BUFFER_SIZE; i += 2)
+        {
+            mean += pulseCounts[i];
+        }
+        mean /= DHT_PULSES - 1;
+
+        double variance = 0;
+        for (int i = 2; i < BUFFER_SIZE; i += 2)
+        {
+            variance += (pulseCounts[i] - mean) * (pulseCounts[i] - mean);
+        }
+        variance /= DHT_PULSES - 1;
+
+        return (mean > 0 ? 100 * Math.sqrt(variance) / mean : 0);
     }
 
     public static void main(final String[] args)
@@ -312,16 +586,28 @@ public class DHT22
 
         int mesure = 0;
         int ok = 0;
+        int decoded = 0;
+        double jitter = 0;
         while (mesure++ < 100)
         {
             final int rd = dht22.read();
             ok += (rd == 0 ? 1 : 0);
             System.out.print("R=" + rd);
             System.out.print(", T=" + dht22.getTemperature());
-            System.out.println(", H=" + dht22.getHumidity());
+            System.out.print(", H=" + dht22.getHumidity());
+            if (rd == 0 || rd == 4)
+            {
+                final double readJitter = jitter(dht22.lastPulseCounts);
+                jitter += readJitter;
+                decoded++;
+                System.out.print(", J=" + String.format("%.1f", readJitter) + "%");
+            }
+            System.out.println();
 
-            Gpio.delay(1000);
+            delay(1000);
         }
         System.out.println("OK=" + ok + "%");
+        System.out.println("Average jitter=" + String.format("%.1f", jitter / Math.max(1, decoded)) + "% (cpu="
+                + Integer.getInteger(CPU_PROPERTY) + ", fifo=" + Integer.getInteger(FIFO_PROPERTY) + ")");
     }
 }
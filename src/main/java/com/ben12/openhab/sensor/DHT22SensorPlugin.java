@@ -17,15 +17,13 @@
 
 package com.ben12.openhab.sensor;
 
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.ws.rs.client.InvocationCallback;
-
-import com.ben12.openhab.model.Item;
+import com.ben12.openhab.peer.PanelStateSharing;
 import com.ben12.openhab.plugin.OpenHabRestClientPlugin;
 import com.ben12.openhab.rest.OpenHabRestClient;
 
@@ -39,109 +37,33 @@ public class DHT22SensorPlugin implements OpenHabRestClientPlugin, Runnable
 
     private static final int         MESURE_DELAY     = 30;
 
-    private OpenHabRestClient        openHabRestClient;
-
     private ScheduledExecutorService executor;
 
     private DHT22                    dht22;
 
-    private Item                     temperatureItem  = null;
-
-    private Item                     humidityItem     = null;
-
     private int                      tryCount         = 0;
 
+    private MesureSender             mesureSender;
+
     @Override
     public void init(final OpenHabRestClient restClient)
     {
-        openHabRestClient = restClient;
-
         dht22 = new DHT22();
 
-        openHabRestClient.item(TEMPERATURE_ITEM, new InvocationCallback<Item>()
-        {
-            @Override
-            public void failed(final Throwable throwable)
-            {
-                LOGGER.log(Level.SEVERE, "Unresolved item: " + TEMPERATURE_ITEM, throwable);
-
-                temperatureItem = new Item();
-                temperatureItem.setName(TEMPERATURE_ITEM);
-                temperatureItem.setState("0");
-            }
-
-            @Override
-            public void completed(final Item response)
-            {
-                temperatureItem = response;
-            }
-        });
-        openHabRestClient.item(HUMIDITY_ITEM, new InvocationCallback<Item>()
-        {
-            @Override
-            public void failed(final Throwable throwable)
-            {
-                LOGGER.log(Level.SEVERE, "Unresolved item: " + HUMIDITY_ITEM, throwable);
-
-                humidityItem = new Item();
-                humidityItem.setName(HUMIDITY_ITEM);
-                humidityItem.setState("0");
-            }
-
-            @Override
-            public void completed(final Item response)
-            {
-                humidityItem = response;
-            }
-        });
+        mesureSender = new MesureSender(restClient, PanelStateSharing.getInstance());
+        mesureSender.resolve(Arrays.asList(TEMPERATURE_ITEM, HUMIDITY_ITEM));
 
         executor = Executors.newSingleThreadScheduledExecutor();
         executor.scheduleWithFixedDelay(this, MESURE_DELAY, MESURE_DELAY, TimeUnit.SECONDS);
     }
 
-    private float getState(final Item item)
-    {
-        float value;
-        try
-        {
-            value = Float.parseFloat(item.getState());
-        }
-        catch (final Exception e)
-        {
-            value = 0.0F;
-            LOGGER.log(Level.WARNING, "Bad item state: " + item.getName() + "=" + item.getState(), e);
-        }
-        return value;
-    }
-
-    private void sendMesure(final Item item, final float newMesure, final float threshold)
-    {
-        if (item != null)
-        {
-            final float diff = newMesure - getState(item);
-            if (diff >= threshold || diff <= -threshold)
-            {
-                final String state = Float.toString((int) (newMesure * 10) / 10.0f);
-                openHabRestClient.submit(item, state);
-                item.setState(state);
-
-                LOGGER.fine(() -> "Item state sent: " + item.getName() + "=" + item.getState());
-            }
-            else
-            {
-                LOGGER.fine(() -> "Item state not sent for the new mesure " + newMesure + ". Current state: "
-                        + item.getName() + "=" + item.getState());
-            }
-        }
-    }
-
     @Override
     public void run()
     {
         if (dht22.read() == 0)
         {
-            sendMesure(temperatureItem, dht22.getTemperature(), 0.1f);
-            sendMesure(humidityItem, dht22.getHumidity(), 0.5f);
+            mesureSender.send(TEMPERATURE_ITEM, dht22.getTemperature(), 0.1f);
+            mesureSender.send(HUMIDITY_ITEM, dht22.getHumidity(), 0.5f);
         }
         else if (tryCount < 10)
         {
@@ -0,0 +1,244 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends raw DHT22 pulse widths to a memory-mapped binary trace file.
+ * <p>
+ * File format (big endian):
+ * <ul>
+ * <li>header: magic (int), version (short), pulses per record (short), calibration i.e. maximum pulse count
+ * (int)</li>
+ * <li>records: timestamp in milliseconds (long), result code (byte), reserved (byte), pulse widths (short *
+ * pulses per record)</li>
+ * </ul>
+ * The file grows by mapped chunks, unused space at the end of the file is filled with zeros: the first record with
+ * a zero timestamp ends the trace. Each record is forced to the storage device by a background thread, so traces
+ * survive a power cut without blocking the sensor thread on the storage I/O.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class DHT22TraceRecorder implements Closeable
+{
+    private static final Logger       LOGGER        = Logger.getLogger(DHT22TraceRecorder.class.getName());
+
+    static final int                  MAGIC         = 0x44485432;
+
+    static final short                VERSION       = 1;
+
+    static final int                  HEADER_SIZE   = 12;
+
+    private static final int          CHUNK_SIZE    = 64 * 1024;
+
+    // Maximum delay in seconds for the pending forces on close
+    private static final long         CLOSE_TIMEOUT = 5;
+
+    private final FileChannel         channel;
+
+    private final int                 pulses;
+
+    private final int                 recordSize;
+
+    private final ExecutorService     forceExecutor;
+
+    private final AtomicBoolean       forcePending  = new AtomicBoolean();
+
+    private volatile MappedByteBuffer buffer;
+
+    private long                      position;
+
+    /**
+     * Opens or creates a trace file, new records are appended to existing ones.
+     *
+     * @param file
+     *            trace file
+     * @param pulses
+     *            number of pulse widths per record
+     * @param calibration
+     *            maximum pulse count of the capture loop
+     * @throws IOException
+     *             if the file cannot be opened or is not a compatible trace file (other format, pulses per record or
+     *             calibration)
+     */
+    public DHT22TraceRecorder(final Path file, final int pulses, final int calibration) throws IOException
+    {
+        this.pulses = pulses;
+        recordSize = recordSize(pulses);
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putShort(VERSION).putShort((short) pulses).putInt(calibration).flip();
+                channel.write(header, 0);
+                channel.force(false);
+                position = HEADER_SIZE;
+            }
+            else
+            {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getShort() != VERSION || header.getShort() != pulses)
+                {
+                    throw new IOException("Incompatible trace file: " + file);
+                }
+                final int fileCalibration = header.getInt();
+                if (fileCalibration != calibration)
+                {
+                    // Pulse widths of both calibrations could not be compared
+                    throw new IOException("Trace file recorded with calibration " + fileCalibration + " instead of "
+                            + calibration + ": " + file);
+                }
+                position = findEnd();
+            }
+            buffer = channel.map(MapMode.READ_WRITE, position, CHUNK_SIZE);
+        }
+        catch (final IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+
+        forceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "DHT22 trace");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static int recordSize(final int pulses)
+    {
+        return Long.BYTES + 2 + pulses * Short.BYTES;
+    }
+
+    private long findEnd() throws IOException
+    {
+        final ByteBuffer timestamp = ByteBuffer.allocate(Long.BYTES);
+        long end = HEADER_SIZE;
+        final long size = channel.size();
+        while (end + recordSize <= size)
+        {
+            timestamp.clear();
+            channel.read(timestamp, end);
+            if (timestamp.getLong(0) == 0)
+            {
+                break;
+            }
+            end += recordSize;
+        }
+        return end;
+    }
+
+    /**
+     * Appends a record. Must not be called concurrently.
+     *
+     * @param timestamp
+     *            capture time in milliseconds
+     * @param result
+     *            result code of the capture
+     * @param pulseCounts
+     *            pulse widths
+     */
+    public void record(final long timestamp, final int result, final int[] pulseCounts)
+    {
+        if (buffer == null)
+        {
+            return;
+        }
+
+        try
+        {
+            if (buffer.remaining() < recordSize)
+            {
+                final MappedByteBuffer full = buffer;
+                buffer = channel.map(MapMode.READ_WRITE, position, CHUNK_SIZE);
+                forceExecutor.execute(full::force);
+            }
+
+            buffer.putLong(timestamp);
+            buffer.put((byte) result);
+            buffer.put((byte) 0);
+            for (int i = 0; i < pulses; i++)
+            {
+                buffer.putShort((short) pulseCounts[i]);
+            }
+            position += recordSize;
+
+            // One pending force covers all the records written before it runs
+            if (forcePending.compareAndSet(false, true))
+            {
+                forceExecutor.execute(this::force);
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.log(Level.WARNING, "DHT22 trace disabled", e);
+            buffer = null;
+        }
+    }
+
+    private void force()
+    {
+        forcePending.set(false);
+        final MappedByteBuffer current = buffer;
+        if (current != null)
+        {
+            current.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        forceExecutor.shutdown();
+        try
+        {
+            forceExecutor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (buffer != null)
+        {
+            buffer.force();
+            buffer = null;
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,219 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Replays a trace file written by {@link DHT22TraceRecorder} through {@link DHT22#decode(int[], float[])}.
+ * <p>
+ * Usage: <code>DHT22TraceReplay &lt;trace file&gt; [iterations]</code>
+ * <p>
+ * Prints the result codes found in the trace with the average capture jitter, the records whose decoding differs
+ * from the recorded result, and the decoding time per record.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class DHT22TraceReplay
+{
+    /**
+     * One recorded capture.
+     */
+    public static class Trace
+    {
+        private final long  timestamp;
+
+        private final int   result;
+
+        private final int[] pulseCounts;
+
+        public Trace(final long timestamp, final int result, final int[] pulseCounts)
+        {
+            this.timestamp = timestamp;
+            this.result = result;
+            this.pulseCounts = pulseCounts;
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public int getResult()
+        {
+            return result;
+        }
+
+        public int[] getPulseCounts()
+        {
+            return pulseCounts;
+        }
+    }
+
+    private final int         calibration;
+
+    private final List<Trace> traces = new ArrayList<>();
+
+    /**
+     * Loads a trace file.
+     *
+     * @param file
+     *            trace file
+     * @throws IOException
+     *             if the file cannot be read, is not a trace file or was not recorded with the pulses per record and
+     *             calibration of {@link DHT22}
+     */
+    public DHT22TraceReplay(final Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < DHT22TraceRecorder.HEADER_SIZE || buffer.getInt() != DHT22TraceRecorder.MAGIC
+                    || buffer.getShort() != DHT22TraceRecorder.VERSION)
+            {
+                throw new IOException("Not a DHT22 trace file: " + file);
+            }
+            final int pulses = buffer.getShort();
+            calibration = buffer.getInt();
+            if (pulses != DHT22.BUFFER_SIZE || calibration != DHT22.DHT_MAXCOUNT)
+            {
+                // DHT22.decode() reads exactly BUFFER_SIZE pulse widths measured with its own calibration
+                throw new IOException("Trace file recorded with " + pulses + " pulses and calibration " + calibration
+                        + " instead of " + DHT22.BUFFER_SIZE + " and " + DHT22.DHT_MAXCOUNT + ": " + file);
+            }
+
+            final int recordSize = DHT22TraceRecorder.recordSize(pulses);
+            while (buffer.remaining() >= recordSize)
+            {
+                final long timestamp = buffer.getLong();
+                if (timestamp == 0)
+                {
+                    break;
+                }
+                final int result = buffer.get();
+                buffer.get();
+                final int[] pulseCounts = new int[pulses];
+                for (int i = 0; i < pulses; i++)
+                {
+                    pulseCounts[i] = buffer.getShort();
+                }
+                traces.add(new Trace(timestamp, result, pulseCounts));
+            }
+        }
+    }
+
+    /**
+     * @return maximum pulse count of the capture loop when the trace was recorded
+     */
+    public int getCalibration()
+    {
+        return calibration;
+    }
+
+    public List<Trace> getTraces()
+    {
+        return traces;
+    }
+
+    /**
+     * @return true if the trace contains a complete capture which can be decoded
+     */
+    private static boolean isDecodable(final Trace trace)
+    {
+        return trace.getResult() == 0 || trace.getResult() == 4;
+    }
+
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: DHT22TraceReplay <trace file> [iterations]");
+            return;
+        }
+
+        final DHT22TraceReplay replay = new DHT22TraceReplay(Paths.get(args[0]));
+        final int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+
+        System.out.println("Records=" + replay.getTraces().size() + ", calibration=" + replay.getCalibration());
+
+        final int[] results = new int[11];
+        final float[] mesures = new float[2];
+        final double[] jitters = new double[results.length];
+        int decodable = 0;
+        int mismatches = 0;
+        for (final Trace trace : replay.getTraces())
+        {
+            results[Math.min(Math.max(trace.getResult(), 0), results.length - 1)]++;
+            if (isDecodable(trace))
+            {
+                decodable++;
+                jitters[trace.getResult()] += DHT22.jitter(trace.getPulseCounts());
+                final int decoded = DHT22.decode(trace.getPulseCounts(), mesures);
+                if (decoded != trace.getResult())
+                {
+                    mismatches++;
+                    System.out.println("Mismatch at " + new Date(trace.getTimestamp()) + ": recorded R="
+                            + trace.getResult() + ", decoded R=" + decoded);
+                }
+            }
+        }
+
+        for (int r = 0; r < results.length; r++)
+        {
+            if (results[r] > 0)
+            {
+                System.out.println("R=" + r + ": " + results[r]
+                        + (r == 0 || r == 4 ? ", average jitter=" + String.format("%.1f", jitters[r] / results[r]) + "%"
+                                : ""));
+            }
+        }
+        System.out.println("Mismatches=" + mismatches + "/" + decodable);
+
+        if (decodable > 0)
+        {
+            // Warm up then measure
+            long sink = 0;
+            long elapsed = 0;
+            for (int pass = 0; pass < 2; pass++)
+            {
+                final long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++)
+                {
+                    for (final Trace trace : replay.getTraces())
+                    {
+                        if (isDecodable(trace))
+                        {
+                            sink += DHT22.decode(trace.getPulseCounts(), mesures);
+                        }
+                    }
+                }
+                elapsed = System.nanoTime() - start;
+            }
+            System.out.println("Decode=" + (elapsed / ((long) iterations * decodable)) + "ns/record (" + sink + ")");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.ben12.openhab.config.ConfigurationFile;
+import com.ben12.openhab.peer.PanelStateSharing;
+import com.ben12.openhab.plugin.OpenHabRestClientPlugin;
+import com.ben12.openhab.rest.OpenHabRestClient;
+import com.ben12.openhab.sensor.file.FileSensor;
+import com.ben12.openhab.sensor.file.SensorSampler;
+
+/**
+ * Submits the mesures of the sensors exposed by the kernel as files (see
+ * {@link com.ben12.openhab.sensor.file.SensorDriver}) to openHAB items, on one shared schedule.
+ * <p>
+ * Sensors are mapped to items in the configuration file given by the <code>config.file</code> system property, with
+ * keys <code>sensor.&lt;sensor identifier&gt;=&lt;item name&gt;</code>, e.g.
+ * <code>sensor.w1/28-0000075a1b2c=Chambre_Temperature</code>. Unmapped sensors are not read. The sysfs root
+ * directory is given by the <code>sensor.sysfs</code> system property (default: <code>/sys</code>).
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class FileSensorPlugin implements OpenHabRestClientPlugin, Runnable
+{
+    private static final Logger              LOGGER       = Logger.getLogger(FileSensorPlugin.class.getName());
+
+    private static final String              ITEM_PREFIX  = "sensor.";
+
+    private static final int                 MESURE_DELAY = 30;
+
+    private MesureSender                     mesureSender;
+
+    private ScheduledExecutorService         executor;
+
+    private SensorSampler                    sampler;
+
+    private final Map<FileSensor, String>    itemNames    = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(final OpenHabRestClient restClient)
+    {
+        final Properties configuration = ConfigurationFile.load();
+        final List<FileSensor> sensors = new ArrayList<>();
+        for (final FileSensor sensor : SensorSampler.discover(SensorSampler.getSysfs()))
+        {
+            final String itemName = configuration.getProperty(ITEM_PREFIX + sensor.getId());
+            if (itemName != null)
+            {
+                itemNames.put(sensor, itemName.trim());
+                sensors.add(sensor);
+            }
+            else
+            {
+                LOGGER.info(() -> "Sensor not mapped to an item: " + sensor);
+            }
+        }
+
+        if (sensors.isEmpty())
+        {
+            return;
+        }
+
+        sampler = new SensorSampler(sensors);
+
+        mesureSender = new MesureSender(restClient, PanelStateSharing.getInstance());
+        mesureSender.resolve(new HashSet<>(itemNames.values()));
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this, MESURE_DELAY, MESURE_DELAY, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            sampler.sample();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (final FileSensor sensor : sampler.getSensors())
+        {
+            final float value = sensor.getValue();
+            if (Float.isNaN(value))
+            {
+                LOGGER.warning(() -> "No mesure from sensor " + sensor + ". Retry later.");
+            }
+            else
+            {
+                mesureSender.send(itemNames.get(sensor), value, sensor.getQuantity().getThreshold());
+            }
+        }
+    }
+}
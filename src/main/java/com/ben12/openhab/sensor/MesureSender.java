@@ -0,0 +1,165 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.client.InvocationCallback;
+
+import com.ben12.openhab.model.Item;
+import com.ben12.openhab.peer.PanelStateSharing;
+import com.ben12.openhab.peer.PanelStateSharing.PeerState;
+import com.ben12.openhab.rest.OpenHabRestClient;
+
+/**
+ * Submits sensor mesures to openHAB items, when they differ enough from the current item state. Items are resolved
+ * once from openHAB, submits use these server items.
+ * <p>
+ * Submitted states are shared with the peer panels. When a peer panel submitted a state of the same item after this
+ * one, the item state is updated from it without reading openHAB, so the same state is not submitted twice.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+class MesureSender
+{
+    private static final Logger     LOGGER    = Logger.getLogger(MesureSender.class.getName());
+
+    // Hours after which a state submitted by a peer panel is ignored
+    private static final long       PEER_AGE  = 1;
+
+    private final OpenHabRestClient openHabRestClient;
+
+    private final PanelStateSharing peers;
+
+    // Resolved items by name
+    private final Map<String, Item> items     = new ConcurrentHashMap<>();
+
+    // Submission time of each item, as given by System.nanoTime()
+    private final Map<String, Long> submitted = new ConcurrentHashMap<>();
+
+    /**
+     * @param openHabRestClient
+     *            openHAB REST client
+     * @param peers
+     *            peer panels, null if the sharing is disabled
+     */
+    MesureSender(final OpenHabRestClient openHabRestClient, final PanelStateSharing peers)
+    {
+        this.openHabRestClient = openHabRestClient;
+        this.peers = peers;
+    }
+
+    /**
+     * Requests the items from openHAB. An item which cannot be resolved is replaced by a local item with the state
+     * "0".
+     *
+     * @param itemNames
+     *            item names
+     */
+    void resolve(final Iterable<String> itemNames)
+    {
+        for (final String itemName : itemNames)
+        {
+            openHabRestClient.item(itemName, new InvocationCallback<Item>()
+            {
+                @Override
+                public void failed(final Throwable throwable)
+                {
+                    LOGGER.log(Level.SEVERE, "Unresolved item: " + itemName, throwable);
+
+                    final Item item = new Item();
+                    item.setName(itemName);
+                    item.setState("0");
+                    items.put(itemName, item);
+                }
+
+                @Override
+                public void completed(final Item response)
+                {
+                    items.put(itemName, response);
+                }
+            });
+        }
+    }
+
+    private static float getState(final Item item)
+    {
+        float value;
+        try
+        {
+            value = Float.parseFloat(item.getState());
+        }
+        catch (final Exception e)
+        {
+            value = 0.0F;
+            LOGGER.log(Level.WARNING, "Bad item state: " + item.getName() + "=" + item.getState(), e);
+        }
+        return value;
+    }
+
+    /**
+     * @param itemName
+     *            name of the item to update, ignored if the item is not resolved yet
+     * @param newMesure
+     *            new mesure
+     * @param threshold
+     *            minimal difference with the item state to submit the mesure
+     */
+    void send(final String itemName, final float newMesure, final float threshold)
+    {
+        final Item item = items.get(itemName);
+        if (item != null)
+        {
+            if (peers != null)
+            {
+                final PeerState shared = peers.getSensor(item.getName(), PEER_AGE, TimeUnit.HOURS);
+                // Compared with the reception time: the clocks of the panels may differ (no RTC)
+                final Long lastSubmit = submitted.get(item.getName());
+                if (shared != null && (lastSubmit == null || shared.getReceived() - lastSubmit > 0))
+                {
+                    item.setState(Float.toString(shared.getValue()));
+                    LOGGER.fine(() -> "Item state from peer panel: " + item.getName() + "=" + item.getState());
+                }
+            }
+
+            final float diff = newMesure - getState(item);
+            if (diff >= threshold || diff <= -threshold)
+            {
+                final String state = Float.toString((int) (newMesure * 10) / 10.0f);
+                openHabRestClient.submit(item, state);
+                item.setState(state);
+                submitted.put(item.getName(), System.nanoTime());
+                if (peers != null)
+                {
+                    peers.publishSensor(item.getName(), Float.parseFloat(state));
+                }
+
+                LOGGER.fine(() -> "Item state sent: " + item.getName() + "=" + item.getState());
+            }
+            else
+            {
+                LOGGER.fine(() -> "Item state not sent for the new mesure " + newMesure + ". Current state: "
+                        + item.getName() + "=" + item.getState());
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Linux CPU affinity and real-time scheduling of the current thread.
+ * <p>
+ * The Linux thread identifier is read from <code>/proc/thread-self</code>, then <code>taskset</code> and
+ * <code>chrt</code> (util-linux) apply <code>sched_setaffinity</code> and <code>sched_setscheduler</code> to it.
+ * SCHED_FIFO requires root or CAP_SYS_NICE. On failure, a warning is logged and the thread keeps its scheduling.
+ * <p>
+ * To dedicate a core to the thread, keep the other threads away from it, e.g. <code>taskset -c 0-2 java ...</code>
+ * or the <code>isolcpus=3</code> kernel parameter.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+final class ThreadIsolation
+{
+    private static final Logger LOGGER       = Logger.getLogger(ThreadIsolation.class.getName());
+
+    private static final Path   THREAD_SELF  = Paths.get("/proc/thread-self");
+
+    private static final long   TOOL_TIMEOUT = 5;
+
+    private ThreadIsolation()
+    {
+    }
+
+    /**
+     * Pins the current thread on a CPU core.
+     *
+     * @param cpu
+     *            CPU core index
+     * @return true on success
+     */
+    static boolean setAffinity(final int cpu)
+    {
+        return apply("taskset", "-p", "-c", Integer.toString(cpu));
+    }
+
+    /**
+     * Sets the current thread scheduling policy to SCHED_FIFO.
+     *
+     * @param priority
+     *            real-time priority, from 1 to 99
+     * @return true on success
+     */
+    static boolean setFifoPriority(final int priority)
+    {
+        return apply("chrt", "-f", "-p", Integer.toString(priority));
+    }
+
+    private static boolean apply(final String... command)
+    {
+        final String tid;
+        try
+        {
+            // "<pid>/task/<tid>"
+            tid = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+        }
+        catch (final IOException | UnsupportedOperationException e)
+        {
+            LOGGER.log(Level.WARNING, "Thread isolation not supported: " + THREAD_SELF + " not available", e);
+            return false;
+        }
+
+        final String[] commandLine = new String[command.length + 1];
+        System.arraycopy(command, 0, commandLine, 0, command.length);
+        commandLine[command.length] = tid;
+
+        Path outputFile = null;
+        try
+        {
+            // The output goes to a file, not a pipe, so waiting for the tool is bounded by the timeout only
+            outputFile = Files.createTempFile("isolation", ".log");
+            final Process process = new ProcessBuilder(commandLine).redirectErrorStream(true)
+                    .redirectOutput(outputFile.toFile())
+                    .start();
+            if (!process.waitFor(TOOL_TIMEOUT, TimeUnit.SECONDS))
+            {
+                process.destroyForcibly();
+                LOGGER.warning(() -> "Thread isolation timeout: " + String.join(" ", commandLine));
+                return false;
+            }
+            if (process.exitValue() != 0)
+            {
+                final String output = new String(Files.readAllBytes(outputFile), Charset.defaultCharset()).trim();
+                LOGGER.warning(() -> "Thread isolation failed: " + String.join(" ", commandLine) + ": " + output);
+                return false;
+            }
+            LOGGER.fine(() -> "Thread isolation applied: " + String.join(" ", commandLine));
+            return true;
+        }
+        catch (final IOException e)
+        {
+            LOGGER.log(Level.WARNING, "Thread isolation not supported: " + commandLine[0] + " not available", e);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if (outputFile != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(outputFile);
+                }
+                catch (final IOException e)
+                {
+                    LOGGER.log(Level.FINE, "Cannot delete " + outputFile, e);
+                }
+            }
+        }
+        return false;
+    }
+}
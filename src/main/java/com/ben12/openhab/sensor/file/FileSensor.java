@@ -0,0 +1,256 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sensor value exposed by the kernel as a file.
+ * <p>
+ * The file channel stays open and the buffer is reused between reads: sysfs regenerates the attribute content on each
+ * read from offset 0. On read error, the channel is closed and reopened on next read.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public abstract class FileSensor implements Closeable
+{
+    private static final Logger LOGGER      = Logger.getLogger(FileSensor.class.getName());
+
+    private static final int    BUFFER_SIZE = 128;
+
+    public enum Quantity
+    {
+        /** Degrees Celsius. */
+        TEMPERATURE(0.1f),
+
+        /** Relative humidity percent. */
+        HUMIDITY(0.5f);
+
+        private final float threshold;
+
+        Quantity(final float threshold)
+        {
+            this.threshold = threshold;
+        }
+
+        /**
+         * @return minimal change of the value to update its item
+         */
+        public float getThreshold()
+        {
+            return threshold;
+        }
+    }
+
+    private final String     id;
+
+    private final Quantity   quantity;
+
+    private final String     bus;
+
+    private final Path       path;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private FileChannel      channel;
+
+    private volatile float   value  = Float.NaN;
+
+    /**
+     * @param id
+     *            sensor identifier, stable across reboots, e.g. <code>w1/28-0000075a1b2c</code>
+     * @param quantity
+     *            measured quantity
+     * @param bus
+     *            bus identifier: sensors of the same bus are read one after the other
+     * @param path
+     *            file to read
+     */
+    protected FileSensor(final String id, final Quantity quantity, final String bus, final Path path)
+    {
+        this.id = id;
+        this.quantity = quantity;
+        this.bus = bus;
+        this.path = path;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public Quantity getQuantity()
+    {
+        return quantity;
+    }
+
+    public String getBus()
+    {
+        return bus;
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return last read value, NaN if the last read failed
+     */
+    public float getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Reads the file and decodes the value.
+     *
+     * @return the value, NaN on failure
+     */
+    public synchronized float read()
+    {
+        float newValue = Float.NaN;
+        try
+        {
+            if (channel == null)
+            {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+
+            buffer.clear();
+            long position = 0;
+            int read;
+            while (buffer.hasRemaining() && (read = channel.read(buffer, position)) > 0)
+            {
+                position += read;
+            }
+            buffer.flip();
+
+            newValue = decode(buffer);
+        }
+        catch (final IOException | NumberFormatException e)
+        {
+            LOGGER.log(Level.WARNING, "Sensor read failed: " + id + " (" + path + ")", e);
+            close();
+        }
+        value = newValue;
+        return newValue;
+    }
+
+    /**
+     * @param content
+     *            file content, from position to limit
+     * @return the decoded value, NaN if the content is not valid
+     */
+    protected abstract float decode(ByteBuffer content);
+
+    /**
+     * Parses a signed decimal integer, after optional blanks.
+     *
+     * @param content
+     *            content to parse, from position to limit. Position is moved after the integer.
+     * @return the integer
+     * @throws NumberFormatException
+     *             if there is no digit
+     */
+    protected static long parseLong(final ByteBuffer content)
+    {
+        while (content.hasRemaining() && content.get(content.position()) <= ' ')
+        {
+            content.get();
+        }
+
+        final boolean negative = (content.hasRemaining() && content.get(content.position()) == '-');
+        if (negative || (content.hasRemaining() && content.get(content.position()) == '+'))
+        {
+            content.get();
+        }
+
+        long result = 0;
+        int digits = 0;
+        while (content.hasRemaining() && content.get(content.position()) >= '0'
+                && content.get(content.position()) <= '9')
+        {
+            result = result * 10 + (content.get() - '0');
+            digits++;
+        }
+        if (digits == 0)
+        {
+            throw new NumberFormatException("Integer expected at " + content.position());
+        }
+        return (negative ? -result : result);
+    }
+
+    /**
+     * Moves the position after the first occurrence of <code>token</code>.
+     *
+     * @param content
+     *            content to search, from position to limit
+     * @param token
+     *            ASCII token
+     * @return true if found, false otherwise (position is then unchanged)
+     */
+    protected static boolean skipTo(final ByteBuffer content, final String token)
+    {
+        final int last = content.limit() - token.length();
+        for (int start = content.position(); start <= last; start++)
+        {
+            int i = 0;
+            while (i < token.length() && content.get(start + i) == token.charAt(i))
+            {
+                i++;
+            }
+            if (i == token.length())
+            {
+                content.position(start + i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (final IOException e)
+            {
+                LOGGER.log(Level.FINE, "", e);
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return id + " (" + quantity + ", " + path + ")";
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ben12.openhab.sensor.file.FileSensor.Quantity;
+
+/**
+ * Hardware monitoring sensors: <code>class/hwmon/hwmon*&#47;temp*_input</code> (millidegrees Celsius) and
+ * <code>class/hwmon/hwmon*&#47;humidity*_input</code> (milli-percent), e.g. sht3x, sht21, lm75.
+ * <p>
+ * Sensor identifier: <code>hwmon/&lt;name&gt;/&lt;address&gt;/&lt;channel&gt;</code>, e.g.
+ * <code>hwmon/sht3x/1-0044/temp1</code>, where the name is the <code>name</code> attribute of the hwmon device and
+ * the address is the name of its <code>device</code> (<code>virtual</code> for a hwmon device without it).
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class HwmonDriver implements SensorDriver
+{
+    private static final String HWMON   = "class/hwmon";
+
+    private static final String INPUT   = "_input";
+
+    private static final String VIRTUAL = "virtual";
+
+    @Override
+    public String getName()
+    {
+        return "hwmon";
+    }
+
+    @Override
+    public List<FileSensor> discover(final Path sysfs) throws IOException
+    {
+        final List<FileSensor> sensors = new ArrayList<>();
+        for (final Path hwmon : Sysfs.list(sysfs.resolve(HWMON), "hwmon*"))
+        {
+            final String name = Sysfs.read(hwmon.resolve("name"), hwmon.getFileName().toString());
+            final Path device = hwmon.resolve("device");
+            final boolean physical = Files.exists(device);
+            final String bus = Sysfs.bus(physical ? device : hwmon);
+            final String address = (physical ? Sysfs.address(device) : VIRTUAL);
+
+            for (final Path input : Sysfs.list(hwmon, "{temp,humidity}[0-9]*" + INPUT))
+            {
+                final String file = input.getFileName().toString();
+                final String channel = file.substring(0, file.length() - INPUT.length());
+                final Quantity quantity = (channel.startsWith("temp") ? Quantity.TEMPERATURE : Quantity.HUMIDITY);
+                sensors.add(new ScaledFileSensor("hwmon/" + name + "/" + address + "/" + channel, quantity, bus,
+                        input, 0, 1));
+            }
+        }
+        return sensors;
+    }
+}
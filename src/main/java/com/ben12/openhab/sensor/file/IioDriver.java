@@ -0,0 +1,119 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ben12.openhab.sensor.file.FileSensor.Quantity;
+
+/**
+ * Industrial I/O sensors: <code>bus/iio/devices/iio:device*&#47;in_temp*</code> (millidegrees Celsius) and
+ * <code>bus/iio/devices/iio:device*&#47;in_humidityrelative*</code> (milli-percent), e.g. si7020, htu21, bme280.
+ * <p>
+ * The processed <code>_input</code> attribute is read if available, otherwise the <code>_raw</code> attribute with
+ * the <code>_offset</code> and <code>_scale</code> read at discovery. Offset and scale are those of the channel
+ * (e.g. <code>in_temp_object_scale</code>), else those shared by the channels of the same type (e.g.
+ * <code>in_temp_scale</code> for <code>in_temp_object_raw</code> and <code>in_temp_ambient_raw</code> of a
+ * mlx90614), else 0 and 1.
+ * <p>
+ * Sensor identifier: <code>iio/&lt;name&gt;/&lt;address&gt;/&lt;channel&gt;</code>, e.g.
+ * <code>iio/si7020/0-0040/temp</code>, where the name is the <code>name</code> attribute of the IIO device and the
+ * address is the name of its parent device.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class IioDriver implements SensorDriver
+{
+    private static final String DEVICES  = "bus/iio/devices";
+
+    private static final String PREFIX   = "in_";
+
+    private static final String INPUT    = "_input";
+
+    private static final String RAW      = "_raw";
+
+    private static final String TEMP     = "temp";
+
+    private static final String HUMIDITY = "humidityrelative";
+
+    @Override
+    public String getName()
+    {
+        return "iio";
+    }
+
+    @Override
+    public List<FileSensor> discover(final Path sysfs) throws IOException
+    {
+        final List<FileSensor> sensors = new ArrayList<>();
+        for (final Path device : Sysfs.list(sysfs.resolve(DEVICES), "iio:device*"))
+        {
+            final String name = Sysfs.read(device.resolve("name"), device.getFileName().toString());
+            // IIO device directory is a child of the bus device (e.g. i2c-1/1-0040/iio:device0)
+            final Path parent = device.toRealPath().getParent();
+            final String bus = Sysfs.bus(parent);
+            final String address = Sysfs.address(parent);
+
+            final Set<String> channels = new LinkedHashSet<>();
+            for (final Path attribute : Sysfs.list(device, PREFIX + "{" + TEMP + "," + HUMIDITY + "}*{" + INPUT + ","
+                    + RAW + "}"))
+            {
+                final String file = attribute.getFileName().toString();
+                channels.add(file.substring(PREFIX.length(), file.lastIndexOf('_')));
+            }
+
+            for (final String channel : channels)
+            {
+                final boolean temperature = channel.startsWith(TEMP);
+                final Quantity quantity = (temperature ? Quantity.TEMPERATURE : Quantity.HUMIDITY);
+                final String type = (temperature ? TEMP : HUMIDITY);
+                final String id = "iio/" + name + "/" + address + "/" + channel;
+                final Path input = device.resolve(PREFIX + channel + INPUT);
+                if (Files.isRegularFile(input))
+                {
+                    sensors.add(new ScaledFileSensor(id, quantity, bus, input, 0, 1));
+                }
+                else
+                {
+                    final double offset = Double.parseDouble(read(device, channel, type, "_offset", "0"));
+                    final double scale = Double.parseDouble(read(device, channel, type, "_scale", "1"));
+                    sensors.add(new ScaledFileSensor(id, quantity, bus, device.resolve(PREFIX + channel + RAW),
+                            offset, scale));
+                }
+            }
+        }
+        return sensors;
+    }
+
+    /**
+     * @return the attribute of the channel, else the attribute shared by the channels of its type, else the default
+     *         value
+     */
+    private static String read(final Path device, final String channel, final String type, final String suffix,
+            final String defaultValue) throws IOException
+    {
+        return Sysfs.read(device.resolve(PREFIX + channel + suffix),
+                Sysfs.read(device.resolve(PREFIX + type + suffix), defaultValue));
+    }
+}
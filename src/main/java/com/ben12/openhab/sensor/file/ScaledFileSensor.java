@@ -0,0 +1,48 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Integer attribute in thousandths of unit, after offset and scale:
+ * <code>value = (raw + offset) * scale / 1000</code>.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+class ScaledFileSensor extends FileSensor
+{
+    private final double offset;
+
+    private final double scale;
+
+    ScaledFileSensor(final String id, final Quantity quantity, final String bus, final Path path, final double offset,
+            final double scale)
+    {
+        super(id, quantity, bus, path);
+        this.offset = offset;
+        this.scale = scale;
+    }
+
+    @Override
+    protected float decode(final ByteBuffer content)
+    {
+        return (float) ((parseLong(content) + offset) * scale / 1000);
+    }
+}
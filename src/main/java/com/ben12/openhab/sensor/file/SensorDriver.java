@@ -0,0 +1,49 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Driver of sensors exposed by the kernel as files.
+ * <p>
+ * Drivers are loaded with {@link java.util.ServiceLoader} from
+ * <code>META-INF/services/com.ben12.openhab.sensor.file.SensorDriver</code>.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public interface SensorDriver
+{
+    /**
+     * @return driver name
+     */
+    String getName();
+
+    /**
+     * Discovers the sensors handled by the driver.
+     *
+     * @param sysfs
+     *            sysfs root directory, <code>/sys</code> or a fake tree
+     * @return the sensors found, empty if none
+     * @throws IOException
+     *             if the sysfs tree cannot be read
+     */
+    List<FileSensor> discover(Path sysfs) throws IOException;
+}
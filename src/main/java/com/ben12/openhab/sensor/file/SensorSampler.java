@@ -0,0 +1,222 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads a set of {@link FileSensor}s: sensors of the same bus one after the other, buses in parallel.
+ * <p>
+ * Usage: <code>SensorSampler [sysfs root] [samples]</code> discovers and reads the sensors of the tree (default:
+ * {@link #getSysfs()}).
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class SensorSampler implements Closeable
+{
+    private static final Logger          LOGGER         = Logger.getLogger(SensorSampler.class.getName());
+
+    /** System property of the sysfs root directory, <code>/sys</code> by default. */
+    public static final String           SYSFS_PROPERTY = "sensor.sysfs";
+
+    private static final int             MAX_THREADS    = 4;
+
+    private final List<FileSensor>       sensors;
+
+    private final List<Callable<Void>>   busReads       = new ArrayList<>();
+
+    private final ExecutorService        executor;
+
+    /**
+     * @param sensors
+     *            sensors to read
+     */
+    public SensorSampler(final List<FileSensor> sensors)
+    {
+        this.sensors = Collections.unmodifiableList(new ArrayList<>(sensors));
+
+        final Map<String, List<FileSensor>> buses = new LinkedHashMap<>();
+        for (final FileSensor sensor : sensors)
+        {
+            buses.computeIfAbsent(sensor.getBus(), bus -> new ArrayList<>()).add(sensor);
+        }
+        for (final List<FileSensor> bus : buses.values())
+        {
+            busReads.add(() -> {
+                for (final FileSensor sensor : bus)
+                {
+                    sensor.read();
+                }
+                return null;
+            });
+        }
+
+        if (busReads.size() > 1)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.min(busReads.size(), MAX_THREADS), r -> {
+                final Thread thread = new Thread(r, "Sensor sampler " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else
+        {
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the sysfs root directory
+     */
+    public static Path getSysfs()
+    {
+        return Paths.get(System.getProperty(SYSFS_PROPERTY, "/sys"));
+    }
+
+    /**
+     * Discovers the sensors of all the drivers.
+     *
+     * @param sysfs
+     *            sysfs root directory
+     * @return the sensors found, without duplicated identifiers
+     */
+    public static List<FileSensor> discover(final Path sysfs)
+    {
+        final List<FileSensor> sensors = new ArrayList<>();
+        final Set<String> ids = new HashSet<>();
+        for (final SensorDriver driver : ServiceLoader.load(SensorDriver.class))
+        {
+            try
+            {
+                for (final FileSensor sensor : driver.discover(sysfs))
+                {
+                    if (ids.add(sensor.getId()))
+                    {
+                        sensors.add(sensor);
+                        LOGGER.fine(() -> "Sensor found by " + driver.getName() + ": " + sensor);
+                    }
+                    else
+                    {
+                        LOGGER.warning(() -> "Duplicated sensor ignored: " + sensor);
+                    }
+                }
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                LOGGER.log(Level.WARNING, "Sensor discovery failed: " + driver.getName(), e);
+            }
+        }
+        return sensors;
+    }
+
+    public List<FileSensor> getSensors()
+    {
+        return sensors;
+    }
+
+    /**
+     * @return number of buses, read in parallel
+     */
+    int getBusCount()
+    {
+        return busReads.size();
+    }
+
+    /**
+     * Reads all the sensors. Values are then available with {@link FileSensor#getValue()}.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the reads
+     */
+    public void sample() throws InterruptedException
+    {
+        if (executor == null)
+        {
+            for (final Callable<Void> busRead : busReads)
+            {
+                try
+                {
+                    busRead.call();
+                }
+                catch (final Exception e)
+                {
+                    LOGGER.log(Level.WARNING, "Sensor read failed", e);
+                }
+            }
+        }
+        else
+        {
+            executor.invokeAll(busReads);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+        sensors.forEach(FileSensor::close);
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException
+    {
+        final Path sysfs = (args.length > 0 ? Paths.get(args[0]) : getSysfs());
+        final int samples = (args.length > 1 ? Integer.parseInt(args[1]) : 3);
+
+        try (SensorSampler sampler = new SensorSampler(discover(sysfs)))
+        {
+            for (final FileSensor sensor : sampler.getSensors())
+            {
+                System.out.println("Sensor " + sensor + " on bus " + sensor.getBus());
+            }
+            for (int s = 0; s < samples; s++)
+            {
+                final long start = System.nanoTime();
+                sampler.sample();
+                final long elapsed = System.nanoTime() - start;
+
+                final StringBuilder line = new StringBuilder("Sample " + (s + 1) + " (" + (elapsed / 1000) + "us):");
+                for (final FileSensor sensor : sampler.getSensors())
+                {
+                    line.append(' ').append(sensor.getId()).append('=').append(sensor.getValue());
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
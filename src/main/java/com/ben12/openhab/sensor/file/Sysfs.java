@@ -0,0 +1,109 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * sysfs tree helpers for sensor discovery.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+final class Sysfs
+{
+    private Sysfs()
+    {
+    }
+
+    /**
+     * @param directory
+     *            directory to list
+     * @param glob
+     *            file name pattern
+     * @return the matching entries sorted by name, empty if the directory does not exist
+     * @throws IOException
+     *             if the directory cannot be read
+     */
+    static List<Path> list(final Path directory, final String glob) throws IOException
+    {
+        final List<Path> entries = new ArrayList<>();
+        if (Files.isDirectory(directory))
+        {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob))
+            {
+                stream.forEach(entries::add);
+            }
+            Collections.sort(entries);
+        }
+        return entries;
+    }
+
+    /**
+     * @param attribute
+     *            attribute file
+     * @param defaultValue
+     *            value returned if the attribute does not exist
+     * @return the attribute value, trimmed
+     * @throws IOException
+     *             if the attribute cannot be read
+     */
+    static String read(final Path attribute, final String defaultValue) throws IOException
+    {
+        if (!Files.isRegularFile(attribute))
+        {
+            return defaultValue;
+        }
+        return new String(Files.readAllBytes(attribute), StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Sensors behind the same parent device (e.g. <code>i2c-1</code>, <code>w1_bus_master1</code>) share a bus.
+     *
+     * @param device
+     *            device directory, possibly a symbolic link
+     * @return the bus identifier
+     * @throws IOException
+     *             if the device cannot be resolved
+     */
+    static String bus(final Path device) throws IOException
+    {
+        final Path parent = device.toRealPath().getParent();
+        return (parent == null ? device.toString() : parent.toString());
+    }
+
+    /**
+     * Identical devices (e.g. two lm75) are told apart by their address on the bus.
+     *
+     * @param device
+     *            device directory, possibly a symbolic link
+     * @return the device address, e.g. <code>1-0048</code> for the I2C device 0x48 of <code>i2c-1</code>
+     * @throws IOException
+     *             if the device cannot be resolved
+     */
+    static String address(final Path device) throws IOException
+    {
+        return device.toRealPath().getFileName().toString();
+    }
+}
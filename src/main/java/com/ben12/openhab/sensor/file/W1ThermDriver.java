@@ -0,0 +1,92 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 1-Wire thermometers (DS18B20, DS18S20, DS1822...) of the <code>w1_therm</code> kernel module:
+ * <code>bus/w1/devices/&lt;family&gt;-&lt;serial&gt;/w1_slave</code>.
+ * <p>
+ * Sensor identifier: <code>w1/&lt;family&gt;-&lt;serial&gt;</code>. Each read starts a conversion (up to 750ms
+ * for a DS18B20), during which the bus master is busy.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class W1ThermDriver implements SensorDriver
+{
+    private static final String   DEVICES  = "bus/w1/devices";
+
+    private static final String   SLAVE    = "w1_slave";
+
+    private static final String   FAMILIES = "{10,22,28,3b,42}-*";
+
+    // Power-on reset value of the scratchpad: the conversion did not run
+    private static final long     RESET    = 85000;
+
+    static class W1SlaveSensor extends FileSensor
+    {
+        W1SlaveSensor(final String id, final String bus, final Path path)
+        {
+            super(id, Quantity.TEMPERATURE, bus, path);
+        }
+
+        /**
+         * <pre>
+         * 72 01 4b 46 7f ff 0e 10 57 : crc=57 YES
+         * 72 01 4b 46 7f ff 0e 10 57 t=23125
+         * </pre>
+         */
+        @Override
+        protected float decode(final ByteBuffer content)
+        {
+            if (!skipTo(content, "YES") || !skipTo(content, "t="))
+            {
+                return Float.NaN;
+            }
+            final long milliDegrees = parseLong(content);
+            return (milliDegrees == RESET ? Float.NaN : milliDegrees / 1000f);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return "w1_therm";
+    }
+
+    @Override
+    public List<FileSensor> discover(final Path sysfs) throws IOException
+    {
+        final List<FileSensor> sensors = new ArrayList<>();
+        for (final Path device : Sysfs.list(sysfs.resolve(DEVICES), FAMILIES))
+        {
+            final Path slave = device.resolve(SLAVE);
+            if (Files.isRegularFile(slave))
+            {
+                sensors.add(new W1SlaveSensor("w1/" + device.getFileName(), Sysfs.bus(device), slave));
+            }
+        }
+        return sensors;
+    }
+}
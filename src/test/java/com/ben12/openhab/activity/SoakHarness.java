@@ -0,0 +1,272 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.activity;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ben12.openhab.sensor.DHT22;
+import com.ben12.openhab.sensor.SimulatedGpioProvider;
+import com.ben12.openhab.state.RestStub;
+import com.pi4j.io.gpio.GpioFactory;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.stage.Stage;
+
+/**
+ * Soak test of the panel: drives {@link ActivityHandler} with synthetic input events and {@link DHT22} with
+ * simulated sensor cycles at high speed, on a {@link SimulatedGpioProvider}. The present mode is polled from a local
+ * {@link RestStub}.
+ * <p>
+ * Heap after GC, thread count, idle timer queue size and DHT22 capture queue size are sampled during the run. The
+ * process exits with status 1 if one of them trends upward, if the REST connection is not reused or if less than
+ * {@value #MIN_CYCLES_PER_SAMPLE} sensor cycles complete per sample.
+ * <p>
+ * Usage: <code>SoakHarness [events] [samples]</code> (default: 2000000 events, 20 samples). Without display, run
+ * with <code>-Dglass.platform=Monocle -Dmonocle.platform=Headless</code>. There is no delay between sensor cycles, no
+ * start pulse delay and no UI pause: the sensor leg runs concurrently with the input events.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class SoakHarness extends Application
+{
+    // Events between two simulated idle timeouts.
+    private static final int    EVENTS_PER_CYCLE      = 1000;
+
+    // Samples ignored for trends, while the JVM warms up.
+    private static final double WARM_UP               = 0.25;
+
+    private static final long   HEAP_TOLERANCE        = 2 * 1024 * 1024;
+
+    private static final int    QUEUE_TOLERANCE       = 2;
+
+    // Sensor cycles expected at least per sample, else the sensor leg has not really been soaked.
+    private static final int    MIN_CYCLES_PER_SAMPLE = 100;
+
+    public static void main(final String[] args)
+    {
+        GpioFactory.setDefaultProvider(new SimulatedGpioProvider());
+        launch(args);
+    }
+
+    @Override
+    public void start(final Stage stage) throws IOException
+    {
+        final List<String> args = getParameters().getRaw();
+        final int events = (args.size() > 0 ? Integer.parseInt(args.get(0)) : 2000000);
+        final int samples = (args.size() > 1 ? Integer.parseInt(args.get(1)) : 20);
+
+        stage.setScene(new Scene(new Group()));
+
+        // Present mode polled from a local REST stub
+        final RestStub stub = new RestStub();
+        stub.setState("Maison_mode", "1");
+        final Path config = Files.createTempFile("soak", ".properties");
+        config.toFile().deleteOnExit();
+        Files.write(config, Collections.singletonList("openhab.state.url=" + stub.getUrl()),
+                StandardCharsets.ISO_8859_1);
+        System.setProperty("config.file", config.toString());
+
+        final ActivityHandler handler = new ActivityHandler();
+        handler.init(stage);
+
+        final Thread soak = new Thread(() -> {
+            boolean success = false;
+            try
+            {
+                success = soak(handler, stub, events, samples);
+            }
+            finally
+            {
+                Platform.exit();
+                System.exit(success ? 0 : 1);
+            }
+        }, "Soak");
+        soak.start();
+    }
+
+    private static boolean soak(final ActivityHandler handler, final RestStub stub, final int events,
+            final int samples)
+    {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger cycles = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final DHT22 dht22 = SimulatedGpioProvider.createDHT22();
+        final Thread sensor = new Thread(() -> {
+            while (running.get())
+            {
+                if (dht22.read() != 0)
+                {
+                    failures.incrementAndGet();
+                }
+                cycles.incrementAndGet();
+            }
+        }, "Soak sensor");
+        sensor.start();
+
+        final long[] heap = new long[samples];
+        final long[] threadCount = new long[samples];
+        final long[] queue = new long[samples];
+        final long[] captureQueue = new long[samples];
+        final int eventsPerSample = Math.max(1, events / samples);
+
+        final long start = System.nanoTime();
+        for (int s = 0; s < samples; s++)
+        {
+            for (int i = 0; i < eventsPerSample; i++)
+            {
+                handler.handle(new Event(Event.ANY));
+                if (i % EVENTS_PER_CYCLE == 0)
+                {
+                    // Idle timeouts then wake up by a click
+                    handler.run();
+                    handler.run();
+                    handler.handle(new MouseEvent(MouseEvent.MOUSE_CLICKED, 0, 0, 0, 0, MouseButton.PRIMARY, 1,
+                            false, false, false, false, true, false, false, false, false, true, null));
+                }
+            }
+
+            queue[s] = handler.getPendingTasks();
+            captureQueue[s] = SimulatedGpioProvider.getPendingCaptures(dht22);
+            for (int gc = 0; gc < 3; gc++)
+            {
+                System.gc();
+            }
+            heap[s] = memory.getHeapMemoryUsage().getUsed();
+            threadCount[s] = threads.getThreadCount();
+
+            System.out.println("Sample " + (s + 1) + "/" + samples + ": heap=" + (heap[s] / 1024) + "KB, threads="
+                    + threadCount[s] + ", queue=" + queue[s] + ", capture queue=" + captureQueue[s] + ", sensor cycles=" + cycles.get() + " (failures="
+                    + failures.get() + "), REST requests=" + stub.getRequests() + " (connections="
+                    + stub.getConnections() + "), elapsed="
+                    + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+        }
+
+        running.set(false);
+        try
+        {
+            sensor.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        final int from = (int) (samples * WARM_UP);
+        final double heapGrowth = growth(heap, from);
+        final double threadGrowth = growth(threadCount, from);
+
+        boolean success = true;
+        if (heapGrowth > HEAP_TOLERANCE)
+        {
+            System.out.println("FAILED: heap grows by " + (long) (heapGrowth / 1024) + "KB");
+            success = false;
+        }
+        if (threadGrowth >= 1)
+        {
+            System.out.println("FAILED: thread count grows by " + threadGrowth);
+            success = false;
+        }
+        for (final long size : queue)
+        {
+            if (size > QUEUE_TOLERANCE)
+            {
+                System.out.println("FAILED: idle timer queue size reaches " + size);
+                success = false;
+                break;
+            }
+        }
+        for (final long size : captureQueue)
+        {
+            if (size > QUEUE_TOLERANCE)
+            {
+                System.out.println("FAILED: DHT22 capture queue size reaches " + size);
+                success = false;
+                break;
+            }
+        }
+        if (cycles.get() < (long) samples * MIN_CYCLES_PER_SAMPLE)
+        {
+            System.out.println("FAILED: only " + cycles.get() + " sensor cycles completed, " + MIN_CYCLES_PER_SAMPLE
+                    + " per sample expected");
+            success = false;
+        }
+        if (stub.getConnections() > 1)
+        {
+            System.out.println("FAILED: " + stub.getConnections() + " REST connections opened");
+            success = false;
+        }
+        if (failures.get() > 0)
+        {
+            System.out.println("FAILED: " + failures.get() + " sensor cycles failed");
+            success = false;
+        }
+        System.out.println(success ? "PASSED" : "FAILED");
+        return success;
+    }
+
+    /**
+     * @return growth over the samples from <code>from</code>, according to their least squares slope
+     */
+    private static double growth(final long[] values, final int from)
+    {
+        final int n = values.length - from;
+        if (n < 2)
+        {
+            return 0;
+        }
+
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = from; i < values.length; i++)
+        {
+            meanX += i;
+            meanY += values[i];
+        }
+        meanX /= n;
+        meanY /= n;
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = from; i < values.length; i++)
+        {
+            covariance += (i - meanX) * (values[i] - meanY);
+            variance += (i - meanX) * (i - meanX);
+        }
+        return covariance / variance * (n - 1);
+    }
+}
@@ -0,0 +1,213 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.peer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ben12.openhab.peer.PanelStateSharing.PeerState;
+
+/**
+ * Panels sharing their states on the loopback interface.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class PanelStateSharingTest
+{
+    private static final int          PANELS  = 3;
+
+    private static final String       ITEM    = "Salon_Temperature2";
+
+    private static final String       MARKER  = "Marker";
+
+    private static final long         TIMEOUT = 2000;
+
+    private final PanelStateSharing[] panels  = new PanelStateSharing[PANELS];
+
+    private InetAddress               group;
+
+    private int                       port;
+
+    private NetworkInterface          loopback;
+
+    private MulticastSocket           sender;
+
+    private float                     marker  = 0;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        group = InetAddress.getByName("239.255.12.12");
+        try (DatagramSocket free = new DatagramSocket(0))
+        {
+            port = free.getLocalPort();
+        }
+        loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+
+        for (int i = 0; i < PANELS; i++)
+        {
+            panels[i] = new PanelStateSharing(group, port, loopback, i + 1);
+        }
+
+        sender = new MulticastSocket();
+        sender.setNetworkInterface(loopback);
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (final PanelStateSharing panel : panels)
+        {
+            if (panel != null)
+            {
+                panel.close();
+            }
+        }
+        if (sender != null)
+        {
+            sender.close();
+        }
+    }
+
+    private static void await(final String message, final BooleanSupplier condition) throws InterruptedException
+    {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(message, System.nanoTime() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Float value(final PeerState state)
+    {
+        return (state == null ? null : state.getValue());
+    }
+
+    /**
+     * Sends a sensor message as another panel would, with the given sender timestamp.
+     */
+    private void sendSensor(final long panelId, final long timestamp, final String name, final float value)
+            throws IOException
+    {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putShort((short) 0xB12E).put((byte) 1).put(PanelStateSharing.SENSOR);
+        buffer.putLong(panelId).putLong(timestamp);
+        buffer.putShort((short) bytes.length).put(bytes).putFloat(value);
+        sender.send(new DatagramPacket(buffer.array(), buffer.position(), group, port));
+    }
+
+    /**
+     * Waits until the first panel has received all the messages sent before.
+     */
+    private void sync() throws IOException, InterruptedException
+    {
+        final float expected = ++marker;
+        sendSensor(99, System.currentTimeMillis(), MARKER, expected);
+        await("Marker not received",
+                () -> Float.valueOf(expected).equals(value(panels[0].getSensor(MARKER, 1, TimeUnit.MINUTES))));
+    }
+
+    @Test
+    public void testSharedStates() throws Exception
+    {
+        panels[0].publishActivity(true);
+        panels[0].publishPresentMode(true);
+        panels[PANELS - 1].publishSensor(ITEM, 21.5f);
+
+        for (int i = 1; i < PANELS; i++)
+        {
+            final PanelStateSharing panel = panels[i];
+            await("Panel " + (i + 1) + " activity", () -> panel.isPeerActive(1, TimeUnit.MINUTES));
+            await("Panel " + (i + 1) + " present mode",
+                    () -> Boolean.TRUE.equals(panel.getPresentMode(1, TimeUnit.MINUTES)));
+        }
+        for (int i = 0; i < PANELS - 1; i++)
+        {
+            final PanelStateSharing panel = panels[i];
+            await("Panel " + (i + 1) + " sensor",
+                    () -> Float.valueOf(21.5f).equals(value(panel.getSensor(ITEM, 1, TimeUnit.MINUTES))));
+        }
+
+        panels[0].publishActivity(false);
+        await("Activity end", () -> !panels[1].isPeerActive(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testOwnMessagesIgnored() throws Exception
+    {
+        panels[0].publishActivity(true);
+        panels[0].publishPresentMode(false);
+        sendSensor(panels[0].getPanelId(), System.currentTimeMillis(), ITEM, 20.0f);
+        await("Activity", () -> panels[1].isPeerActive(1, TimeUnit.MINUTES));
+        sync();
+
+        assertFalse(panels[0].isPeerActive(1, TimeUnit.MINUTES));
+        assertNull(panels[0].getPresentMode(1, TimeUnit.MINUTES));
+        assertNull(panels[0].getSensor(ITEM, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testNewestTimestampWins() throws Exception
+    {
+        sendSensor(42, 2000, ITEM, 21.0f);
+        sync();
+        assertEquals(Float.valueOf(21.0f), value(panels[0].getSensor(ITEM, 1, TimeUnit.MINUTES)));
+
+        // Older message of the same panel, received out of order
+        sendSensor(42, 1000, ITEM, 19.0f);
+        sync();
+        assertEquals(Float.valueOf(21.0f), value(panels[0].getSensor(ITEM, 1, TimeUnit.MINUTES)));
+
+        sendSensor(42, 3000, ITEM, 23.0f);
+        sync();
+        assertEquals(Float.valueOf(23.0f), value(panels[0].getSensor(ITEM, 1, TimeUnit.MINUTES)));
+    }
+
+    @Test
+    public void testPanelClocksNotCompared() throws Exception
+    {
+        sendSensor(42, 5000, ITEM, 21.0f);
+        sync();
+
+        // Another panel with a clock late: its state is the last one received
+        sendSensor(43, 1000, ITEM, 22.0f);
+        sync();
+        final PeerState state = panels[0].getSensor(ITEM, 1, TimeUnit.MINUTES);
+        assertEquals(Float.valueOf(22.0f), value(state));
+        assertEquals(43, state.getPanelId());
+    }
+}
@@ -0,0 +1,142 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ben12.openhab.sensor.DHT22TraceReplay.Trace;
+
+/**
+ * Replays the recorded captures of <code>dht22.trace</code> through {@link DHT22#decode(int[], float[])}.
+ * <p>
+ * The trace holds successful captures (humidity, temperature: 45.6, 21.3 / 45.8, 21.4 / 99.9, -5.3 / 100.0, 0.0 /
+ * 31.2, 28.7 / 0.0, -40.0), a checksum error, a successful capture with a preempted low pulse (45.7, 21.2), another
+ * checksum error and two timeouts (R=2 and R=1).
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class DHT22TraceReplayTest
+{
+    private static final float   DELTA   = 0.001f;
+
+    private static final int[]   RESULTS = { 0, 0, 0, 0, 0, 0, 4, 0, 4, 2, 1 };
+
+    private static final float[] MESURES = { 45.6f, 21.3f, 45.8f, 21.4f, 99.9f, -5.3f, 100.0f, 0.0f, 31.2f, 28.7f,
+            0.0f, -40.0f, 0, 0, 45.7f, 21.2f };
+
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    private static Path corpus() throws Exception
+    {
+        return Paths.get(DHT22TraceReplayTest.class.getResource("dht22.trace").toURI());
+    }
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        final DHT22TraceReplay replay = new DHT22TraceReplay(corpus());
+        final List<Trace> traces = replay.getTraces();
+
+        assertEquals(DHT22.DHT_MAXCOUNT, replay.getCalibration());
+        assertEquals(RESULTS.length, traces.size());
+
+        final float[] mesures = new float[2];
+        for (int i = 0; i < traces.size(); i++)
+        {
+            final Trace trace = traces.get(i);
+            assertEquals("Recorded result " + i, RESULTS[i], trace.getResult());
+            if (trace.getResult() == 0 || trace.getResult() == 4)
+            {
+                assertEquals("Decoded result " + i, trace.getResult(), DHT22.decode(trace.getPulseCounts(), mesures));
+                if (trace.getResult() == 0)
+                {
+                    assertEquals("Humidity " + i, MESURES[i * 2], mesures[0], DELTA);
+                    assertEquals("Temperature " + i, MESURES[i * 2 + 1], mesures[1], DELTA);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRecordThenReplay() throws Exception
+    {
+        final Path file = folder.getRoot().toPath().resolve("record.trace");
+        final List<Trace> traces = new DHT22TraceReplay(corpus()).getTraces();
+
+        try (DHT22TraceRecorder recorder = new DHT22TraceRecorder(file, DHT22.BUFFER_SIZE, DHT22.DHT_MAXCOUNT))
+        {
+            for (final Trace trace : traces)
+            {
+                recorder.record(trace.getTimestamp(), trace.getResult(), trace.getPulseCounts());
+            }
+        }
+
+        final List<Trace> replayed = new DHT22TraceReplay(file).getTraces();
+        assertEquals(traces.size(), replayed.size());
+        for (int i = 0; i < traces.size(); i++)
+        {
+            assertEquals(traces.get(i).getTimestamp(), replayed.get(i).getTimestamp());
+            assertEquals(traces.get(i).getResult(), replayed.get(i).getResult());
+            assertArrayEquals(traces.get(i).getPulseCounts(), replayed.get(i).getPulseCounts());
+        }
+    }
+
+    private void assertRejected(final int pulses, final int calibration) throws IOException
+    {
+        final Path file = folder.newFile().toPath();
+        try (DHT22TraceRecorder recorder = new DHT22TraceRecorder(file, pulses, calibration))
+        {
+            recorder.record(System.currentTimeMillis(), 0, new int[pulses]);
+        }
+
+        try
+        {
+            new DHT22TraceReplay(file);
+            fail("Trace with " + pulses + " pulses and calibration " + calibration + " replayed");
+        }
+        catch (final IOException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testOtherPulsesRejected() throws Exception
+    {
+        assertRejected(DHT22.BUFFER_SIZE - 2, DHT22.DHT_MAXCOUNT);
+        assertRejected(DHT22.BUFFER_SIZE + 2, DHT22.DHT_MAXCOUNT);
+    }
+
+    @Test
+    public void testOtherCalibrationRejected() throws Exception
+    {
+        assertRejected(DHT22.BUFFER_SIZE, DHT22.DHT_MAXCOUNT / 2);
+    }
+}
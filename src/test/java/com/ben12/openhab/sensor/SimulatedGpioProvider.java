@@ -0,0 +1,124 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pi4j.io.gpio.GpioProviderBase;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinMode;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiGpioProvider;
+import com.pi4j.io.gpio.RaspiPin;
+
+/**
+ * GPIO provider without hardware. The DHT22 pin plays a valid sensor response (45.6%, 21.3C) each time it is
+ * switched to input.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class SimulatedGpioProvider extends GpioProviderBase
+{
+    private static final Pin SENSOR_PIN = RaspiPin.GPIO_02;
+
+    private final boolean[]  waveform;
+
+    private int              sample;
+
+    /**
+     * @return a DHT22 without delay between two mesures nor start pulse delay, there is no sensor to protect, and
+     *         without UI pause
+     */
+    public static DHT22 createDHT22()
+    {
+        return new DHT22(0, 0, false);
+    }
+
+    /**
+     * @return number of captures waiting for the capture thread of the DHT22
+     */
+    public static int getPendingCaptures(final DHT22 dht22)
+    {
+        return dht22.getPendingCaptures();
+    }
+
+    public SimulatedGpioProvider()
+    {
+        final int[] data = { 0x01, 0xC8, 0x00, 0xD5, 0 };
+        data[4] = (data[0] + data[1] + data[2] + data[3]) & 0xFF;
+
+        final List<Boolean> levels = new ArrayList<>();
+        addLevel(levels, true, 5);
+        addLevel(levels, false, 80);
+        addLevel(levels, true, 80);
+        for (int bit = 0; bit < 40; bit++)
+        {
+            addLevel(levels, false, 50);
+            addLevel(levels, true, ((data[bit / 8] >> (7 - bit % 8)) & 1) != 0 ? 70 : 28);
+        }
+        addLevel(levels, false, 50);
+        addLevel(levels, true, 1);
+
+        waveform = new boolean[levels.size()];
+        for (int i = 0; i < waveform.length; i++)
+        {
+            waveform[i] = levels.get(i);
+        }
+    }
+
+    private static void addLevel(final List<Boolean> levels, final boolean high, final int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            levels.add(high);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return RaspiGpioProvider.NAME;
+    }
+
+    @Override
+    public void setMode(final Pin pin, final PinMode mode)
+    {
+        super.setMode(pin, mode);
+        if (pin.equals(SENSOR_PIN) && mode == PinMode.DIGITAL_INPUT)
+        {
+            sample = 0;
+        }
+    }
+
+    @Override
+    public PinState getState(final Pin pin)
+    {
+        if (pin.equals(SENSOR_PIN) && getMode(pin) == PinMode.DIGITAL_INPUT)
+        {
+            return (waveform[Math.min(sample++, waveform.length - 1)] ? PinState.HIGH : PinState.LOW);
+        }
+        return super.getState(pin);
+    }
+
+    @Override
+    public void setPwm(final Pin pin, final int value)
+    {
+        getPinCache(pin).setPwmValue(value);
+    }
+}
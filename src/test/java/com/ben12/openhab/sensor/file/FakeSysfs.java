@@ -0,0 +1,109 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Fake sysfs tree: device directories under <code>devices</code>, linked from <code>bus</code> and
+ * <code>class</code> as in the kernel tree.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+class FakeSysfs
+{
+    private final Path root;
+
+    private final Path devices;
+
+    FakeSysfs(final Path root)
+    {
+        this.root = root;
+        devices = root.resolve("devices");
+    }
+
+    Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Adds a 1-Wire slave on the bus master <code>w1_bus_master1</code>.
+     */
+    void addW1Slave(final String device, final String crc, final String milliCelsius) throws IOException
+    {
+        final Path slave = write(devices.resolve("w1_bus_master1/" + device), "w1_slave",
+                "72 01 4b 46 7f ff 0e 10 57 : crc=57 " + crc + "\n72 01 4b 46 7f ff 0e 10 57 t=" + milliCelsius + "\n");
+        link(root.resolve("bus/w1/devices/" + device), slave);
+    }
+
+    /**
+     * Adds a hwmon device on an I2C bus.
+     *
+     * @param attributes
+     *            attribute names and values
+     */
+    void addHwmon(final String i2c, final String address, final String hwmon, final String name,
+            final String... attributes) throws IOException
+    {
+        final Path device = devices.resolve("platform/soc/" + i2c + "/" + address);
+        final Path directory = write(device.resolve("hwmon/" + hwmon), "name", name + "\n");
+        writeAll(directory, attributes);
+        link(directory.resolve("device"), device);
+        link(root.resolve("class/hwmon/" + hwmon), directory);
+    }
+
+    /**
+     * Adds an IIO device on an I2C bus.
+     *
+     * @param attributes
+     *            attribute names and values
+     */
+    void addIio(final String i2c, final String address, final String iio, final String name,
+            final String... attributes) throws IOException
+    {
+        final Path directory = write(devices.resolve("platform/soc/" + i2c + "/" + address + "/" + iio), "name",
+                name + "\n");
+        writeAll(directory, attributes);
+        link(root.resolve("bus/iio/devices/" + iio), directory);
+    }
+
+    private static void writeAll(final Path directory, final String... attributes) throws IOException
+    {
+        for (int i = 0; i < attributes.length; i += 2)
+        {
+            write(directory, attributes[i], attributes[i + 1] + "\n");
+        }
+    }
+
+    private static Path write(final Path directory, final String name, final String content) throws IOException
+    {
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(name), content.getBytes(StandardCharsets.US_ASCII));
+        return directory;
+    }
+
+    private static void link(final Path link, final Path target) throws IOException
+    {
+        Files.createDirectories(link.getParent());
+        Files.createSymbolicLink(link, link.getParent().relativize(target));
+    }
+}
@@ -0,0 +1,234 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.sensor.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ben12.openhab.sensor.file.FileSensor.Quantity;
+
+/**
+ * Discovers and reads sensors of a fake sysfs tree.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class SensorSamplerTest
+{
+    private static final float DELTA = 0.0001f;
+
+    @Rule
+    public TemporaryFolder     folder = new TemporaryFolder();
+
+    private FakeSysfs          sysfs;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        sysfs = new FakeSysfs(folder.getRoot().toPath());
+    }
+
+    private List<FileSensor> sample() throws InterruptedException
+    {
+        final SensorSampler sampler = new SensorSampler(SensorSampler.discover(sysfs.getRoot()));
+        try
+        {
+            sampler.sample();
+        }
+        finally
+        {
+            sampler.close();
+        }
+        return sampler.getSensors();
+    }
+
+    private static FileSensor find(final List<FileSensor> sensors, final String id)
+    {
+        final FileSensor found = sensors.stream().filter(sensor -> sensor.getId().equals(id)).findFirst().orElse(
+                null);
+        assertNotNull("Sensor not discovered: " + id, found);
+        return found;
+    }
+
+    @Test
+    public void testW1Therm() throws Exception
+    {
+        sysfs.addW1Slave("28-0000075a1b2c", "YES", "23125");
+        sysfs.addW1Slave("28-0000075a1b2d", "YES", "-1062");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(2, sensors.size());
+
+        final FileSensor sensor = find(sensors, "w1/28-0000075a1b2c");
+        assertEquals(Quantity.TEMPERATURE, sensor.getQuantity());
+        assertEquals(23.125f, sensor.getValue(), DELTA);
+        assertEquals(-1.062f, find(sensors, "w1/28-0000075a1b2d").getValue(), DELTA);
+    }
+
+    @Test
+    public void testW1ThermCrcError() throws Exception
+    {
+        sysfs.addW1Slave("28-0000075a1b2c", "NO", "23125");
+
+        final List<FileSensor> sensors = sample();
+        assertTrue(Float.isNaN(find(sensors, "w1/28-0000075a1b2c").getValue()));
+    }
+
+    @Test
+    public void testW1ThermPowerOnReset() throws Exception
+    {
+        // 85 degrees Celsius is the power-on reset value of the DS18B20 scratchpad, not a mesure
+        sysfs.addW1Slave("28-0000075a1b2c", "YES", "85000");
+
+        final List<FileSensor> sensors = sample();
+        assertTrue(Float.isNaN(find(sensors, "w1/28-0000075a1b2c").getValue()));
+    }
+
+    @Test
+    public void testHwmon() throws Exception
+    {
+        sysfs.addHwmon("i2c-1", "1-0044", "hwmon1", "sht3x", "temp1_input", "21350", "humidity1_input", "45600");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(2, sensors.size());
+
+        final FileSensor temperature = find(sensors, "hwmon/sht3x/1-0044/temp1");
+        assertEquals(Quantity.TEMPERATURE, temperature.getQuantity());
+        assertEquals(21.35f, temperature.getValue(), DELTA);
+
+        final FileSensor humidity = find(sensors, "hwmon/sht3x/1-0044/humidity1");
+        assertEquals(Quantity.HUMIDITY, humidity.getQuantity());
+        assertEquals(45.6f, humidity.getValue(), DELTA);
+    }
+
+    @Test
+    public void testIioRaw() throws Exception
+    {
+        sysfs.addIio("i2c-0", "0-0040", "iio:device0", "si7020", //
+                "in_temp_raw", "25412", "in_temp_offset", "-17473", "in_temp_scale", "2.681274414", //
+                "in_humidityrelative_raw", "29024", "in_humidityrelative_offset", "-3146",
+                "in_humidityrelative_scale", "1.907348632");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(2, sensors.size());
+
+        // (raw + offset) * scale / 1000
+        final FileSensor temperature = find(sensors, "iio/si7020/0-0040/temp");
+        assertEquals(Quantity.TEMPERATURE, temperature.getQuantity());
+        assertEquals((25412 - 17473) * 2.681274414 / 1000, temperature.getValue(), DELTA);
+
+        final FileSensor humidity = find(sensors, "iio/si7020/0-0040/humidityrelative");
+        assertEquals(Quantity.HUMIDITY, humidity.getQuantity());
+        assertEquals((29024 - 3146) * 1.907348632 / 1000, humidity.getValue(), DELTA);
+    }
+
+    @Test
+    public void testIioInputPreferred() throws Exception
+    {
+        sysfs.addIio("i2c-0", "0-0076", "iio:device1", "bme280", "in_temp_input", "22480", "in_temp_raw", "1",
+                "in_temp_scale", "1000");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(1, sensors.size());
+        assertEquals(22.48f, find(sensors, "iio/bme280/0-0076/temp").getValue(), DELTA);
+    }
+
+    @Test
+    public void testIioSharedScale() throws Exception
+    {
+        // mlx90614: offset and scale shared by the temperature channels, in 0.02 Kelvin
+        sysfs.addIio("i2c-1", "1-005a", "iio:device0", "mlx90614", //
+                "in_temp_object_raw", "14850", "in_temp_ambient_raw", "14800", //
+                "in_temp_offset", "-13657.500000", "in_temp_scale", "20", //
+                "in_temp_object_scale", "10");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(2, sensors.size());
+
+        assertEquals((14800 - 13657.5) * 20 / 1000, find(sensors, "iio/mlx90614/1-005a/temp_ambient").getValue(),
+                DELTA);
+        // The channel scale takes precedence over the shared one
+        assertEquals((14850 - 13657.5) * 10 / 1000, find(sensors, "iio/mlx90614/1-005a/temp_object").getValue(),
+                DELTA);
+    }
+
+    @Test
+    public void testIdenticalChips() throws Exception
+    {
+        sysfs.addHwmon("i2c-1", "1-0048", "hwmon1", "lm75", "temp1_input", "20500");
+        sysfs.addHwmon("i2c-1", "1-0049", "hwmon2", "lm75", "temp1_input", "18250");
+        sysfs.addIio("i2c-0", "0-0040", "iio:device0", "si7020", "in_temp_input", "21000");
+        sysfs.addIio("i2c-1", "1-0040", "iio:device1", "si7020", "in_temp_input", "22000");
+
+        final List<FileSensor> sensors = sample();
+        assertEquals(4, sensors.size());
+
+        assertEquals(20.5f, find(sensors, "hwmon/lm75/1-0048/temp1").getValue(), DELTA);
+        assertEquals(18.25f, find(sensors, "hwmon/lm75/1-0049/temp1").getValue(), DELTA);
+        assertEquals(21.0f, find(sensors, "iio/si7020/0-0040/temp").getValue(), DELTA);
+        assertEquals(22.0f, find(sensors, "iio/si7020/1-0040/temp").getValue(), DELTA);
+    }
+
+    @Test
+    public void testBusGrouping() throws Exception
+    {
+        sysfs.addW1Slave("28-0000075a1b2c", "YES", "23125");
+        sysfs.addW1Slave("28-0000075a1b2d", "YES", "22000");
+        sysfs.addHwmon("i2c-1", "1-0044", "hwmon1", "sht3x", "temp1_input", "21350", "humidity1_input", "45600");
+        sysfs.addHwmon("i2c-1", "1-0048", "hwmon2", "lm75", "temp1_input", "20500");
+        sysfs.addIio("i2c-0", "0-0040", "iio:device0", "si7020", "in_temp_input", "21000");
+
+        final List<FileSensor> sensors = SensorSampler.discover(sysfs.getRoot());
+        assertEquals(6, sensors.size());
+
+        final String w1 = find(sensors, "w1/28-0000075a1b2c").getBus();
+        final String i2c1 = find(sensors, "hwmon/sht3x/1-0044/temp1").getBus();
+        final String i2c0 = find(sensors, "iio/si7020/0-0040/temp").getBus();
+
+        assertEquals(w1, find(sensors, "w1/28-0000075a1b2d").getBus());
+        assertEquals(i2c1, find(sensors, "hwmon/sht3x/1-0044/humidity1").getBus());
+        assertEquals(i2c1, find(sensors, "hwmon/lm75/1-0048/temp1").getBus());
+        assertTrue(i2c1.endsWith("i2c-1"));
+        assertTrue(i2c0.endsWith("i2c-0"));
+        assertNotEquals(w1, i2c1);
+
+        final SensorSampler sampler = new SensorSampler(sensors);
+        try
+        {
+            assertEquals(3, sampler.getBusCount());
+
+            sampler.sample();
+            assertEquals(20.5f, find(sensors, "hwmon/lm75/1-0048/temp1").getValue(), DELTA);
+            assertEquals(21.0f, find(sensors, "iio/si7020/0-0040/temp").getValue(), DELTA);
+            assertEquals(22.0f, find(sensors, "w1/28-0000075a1b2d").getValue(), DELTA);
+        }
+        finally
+        {
+            sampler.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Reads item states from a {@link RestStub} and from a raw socket server replaying scripted responses.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class ItemStateClientTest
+{
+    private static final String OK       = "HTTP/1.1 200 OK\r\n";
+
+    private static final int    TIMEOUT  = 200;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private final List<String>  requests = new CopyOnWriteArrayList<>();
+
+    private RestStub            stub;
+
+    private ServerSocket        server;
+
+    private ItemStateClient     client;
+
+    /**
+     * Serves the requests of one connection.
+     */
+    private interface Script
+    {
+        void serve(BufferedReader input, OutputStream output) throws IOException;
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (client != null)
+        {
+            client.close();
+        }
+        if (stub != null)
+        {
+            stub.close();
+        }
+        if (server != null)
+        {
+            server.close();
+        }
+    }
+
+    private ItemStateClient stubClient() throws IOException
+    {
+        stub = new RestStub();
+        client = new ItemStateClient(stub.getUrl(), TIMEOUT);
+        return client;
+    }
+
+    /**
+     * Starts a raw server: the n-th connection is served by the n-th script then closed, the connections after the
+     * last script are closed at once.
+     */
+    private ItemStateClient rawClient(final Script... scripts) throws IOException
+    {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread thread = new Thread(() -> {
+            while (true)
+            {
+                final Socket socket;
+                try
+                {
+                    socket = server.accept();
+                }
+                catch (final IOException e)
+                {
+                    // Server closed
+                    return;
+                }
+                try (Socket connection = socket)
+                {
+                    final int index = accepted.getAndIncrement();
+                    if (index < scripts.length)
+                    {
+                        scripts[index].serve(new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                                StandardCharsets.ISO_8859_1)), connection.getOutputStream());
+                    }
+                }
+                catch (final IOException e)
+                {
+                    // Connection reset by the client
+                }
+            }
+        }, "Raw server");
+        thread.setDaemon(true);
+        thread.start();
+
+        client = new ItemStateClient("http://127.0.0.1:" + server.getLocalPort(), TIMEOUT);
+        return client;
+    }
+
+    /**
+     * Reads a request, its request line is kept in {@link #requests}.
+     */
+    private void readRequest(final BufferedReader input) throws IOException
+    {
+        requests.add(input.readLine());
+        String line;
+        while ((line = input.readLine()) != null && !line.isEmpty())
+        {
+            // Headers ignored
+        }
+    }
+
+    private static void write(final OutputStream output, final String response) throws IOException
+    {
+        output.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+
+    private static String withLength(final String body)
+    {
+        return OK + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
+    @Test
+    public void testContentLength() throws Exception
+    {
+        stubClient();
+        stub.setState("Maison_mode", "0");
+        stub.setState("Salon_Temperature2", "21.3");
+
+        assertEquals("0", client.state("Maison_mode"));
+        assertEquals("21.3", client.state("Salon_Temperature2"));
+        assertEquals(1, stub.getConnections());
+    }
+
+    @Test
+    public void testNotFound() throws Exception
+    {
+        stubClient();
+        stub.setState("Maison_mode", "1");
+
+        assertNull(client.state("Unknown"));
+        assertArrayEquals(new String[] { null, "1" }, client.states("Unknown", "Maison_mode"));
+        assertEquals(1, stub.getConnections());
+    }
+
+    @Test
+    public void testPipelinedStates() throws Exception
+    {
+        stubClient();
+        stub.setState("Maison_mode", "0");
+        stub.setState("Salon_Temperature2", "21.3");
+        stub.setState("Salon_Humidity2", "45.6");
+
+        final String[] items = { "Maison_mode", "Salon_Temperature2", "Salon_Humidity2" };
+        assertArrayEquals(new String[] { "0", "21.3", "45.6" }, client.states(items));
+        stub.setState("Salon_Temperature2", "21.4");
+        assertArrayEquals(new String[] { "0", "21.4", "45.6" }, client.states(items));
+        assertEquals(6, stub.getRequests());
+        assertEquals(1, stub.getConnections());
+    }
+
+    @Test
+    public void testChunked() throws Exception
+    {
+        rawClient((input, output) -> {
+            readRequest(input);
+            write(output, OK + "Transfer-Encoding: chunked\r\n\r\n3\r\n21.\r\n2;ext=1\r\n35\r\n0\r\n"
+                    + "X-Trailer: 1\r\n\r\n");
+            readRequest(input);
+            write(output, withLength("45.6"));
+        });
+
+        assertEquals("21.35", client.state("Salon_Temperature2"));
+        // The chunked body is entirely read: the next response is read from its first byte
+        assertEquals("45.6", client.state("Salon_Humidity2"));
+        assertEquals(1, accepted.get());
+        assertEquals("GET /rest/items/Salon_Temperature2/state HTTP/1.1", requests.get(0));
+        assertEquals("GET /rest/items/Salon_Humidity2/state HTTP/1.1", requests.get(1));
+    }
+
+    @Test
+    public void testConnectionClose() throws Exception
+    {
+        rawClient((input, output) -> {
+            readRequest(input);
+            write(output, OK + "Connection: close\r\nContent-Length: 4\r\n\r\n21.3");
+        }, (input, output) -> {
+            readRequest(input);
+            // Body ended by the connection end
+            write(output, OK + "Connection: close\r\n\r\n21.4");
+        }, (input, output) -> {
+            readRequest(input);
+            write(output, withLength("21.5"));
+        });
+
+        assertEquals("21.3", client.state("Salon_Temperature2"));
+        assertEquals("21.4", client.state("Salon_Temperature2"));
+        assertEquals("21.5", client.state("Salon_Temperature2"));
+        assertEquals(3, accepted.get());
+    }
+
+    @Test
+    public void testStaleConnectionRetried() throws Exception
+    {
+        rawClient((input, output) -> {
+            readRequest(input);
+            // Idle connection closed by the server after the response, without notice
+            write(output, withLength("0"));
+        }, (input, output) -> {
+            readRequest(input);
+            write(output, withLength("1"));
+        });
+
+        assertEquals("0", client.state("Maison_mode"));
+        assertEquals("1", client.state("Maison_mode"));
+        assertEquals(2, accepted.get());
+    }
+
+    @Test
+    public void testBadContentLength() throws Exception
+    {
+        rawClient((input, output) -> {
+            readRequest(input);
+            write(output, OK + "Content-Length: four\r\n\r\n21.3");
+        }, (input, output) -> {
+            readRequest(input);
+            write(output, withLength("21.3"));
+        });
+
+        try
+        {
+            client.state("Salon_Temperature2");
+            fail("Invalid Content-Length accepted");
+        }
+        catch (final IOException e)
+        {
+            // Expected, the connection is dropped
+        }
+        assertEquals("21.3", client.state("Salon_Temperature2"));
+        assertEquals(2, accepted.get());
+    }
+
+    @Test
+    public void testTimeoutNotRetried() throws Exception
+    {
+        rawClient((input, output) -> {
+            readRequest(input);
+            write(output, withLength("0"));
+            // Unresponsive server: the next request is never answered
+            readRequest(input);
+            while (input.read() >= 0)
+            {
+                // Until the client gives up
+            }
+        });
+
+        assertEquals("0", client.state("Maison_mode"));
+
+        final long start = System.nanoTime();
+        try
+        {
+            client.state("Maison_mode");
+            fail("No timeout");
+        }
+        catch (final SocketTimeoutException e)
+        {
+            // Expected
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Timeout after " + elapsed + "ms", elapsed < 2 * TIMEOUT);
+        assertEquals(1, accepted.get());
+    }
+}
@@ -0,0 +1,263 @@
+// Copyright (C) 2017 Benot Moreau (ben.12)
+//
+// This file is part of MY-HABFX-UI (My openHAB javaFX User Interface).
+//
+// MY-HABFX-UI is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// MY-HABFX-UI is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with MY-HABFX-UI.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.ben12.openhab.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stub of the openHAB REST API items end points: <code>/rest/items/{name}</code> (JSON) and
+ * <code>/rest/items/{name}/state</code> (plain text). Counts the response bytes and the client connections.
+ *
+ * @author Benot Moreau (ben.12)
+ */
+public class RestStub implements Closeable
+{
+    private static final String       ITEMS_PATH  = "/rest/items/";
+
+    private static final String       STATE_PATH  = "/state";
+
+    private final HttpServer          server;
+
+    private final Map<String, String> states      = new ConcurrentHashMap<>();
+
+    private final Set<String>         connections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong          requests    = new AtomicLong();
+
+    private final AtomicLong          bytes       = new AtomicLong();
+
+    /**
+     * Starts the stub on a free port of the loopback interface.
+     *
+     * @throws IOException
+     *             if the server cannot be started
+     */
+    public RestStub() throws IOException
+    {
+        // Headers and body are written separately: avoid Nagle's algorithm delay on each response.
+        // The property is JVM-wide, the stub only runs in test JVMs.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+        {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(ITEMS_PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * @return base URL of the stub
+     */
+    public String getUrl()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public void setState(final String itemName, final String state)
+    {
+        states.put(itemName, state);
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    /**
+     * @return number of response body bytes sent
+     */
+    public long getBytes()
+    {
+        return bytes.get();
+    }
+
+    /**
+     * @return number of distinct client connections
+     */
+    public int getConnections()
+    {
+        return connections.size();
+    }
+
+    public void reset()
+    {
+        requests.set(0);
+        bytes.set(0);
+        connections.clear();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress().toString());
+
+        try (InputStream input = exchange.getRequestBody())
+        {
+            while (input.read() >= 0)
+            {
+                // Consume the request body
+            }
+        }
+
+        String name = exchange.getRequestURI().getPath().substring(ITEMS_PATH.length());
+        final boolean stateOnly = name.endsWith(STATE_PATH);
+        if (stateOnly)
+        {
+            name = name.substring(0, name.length() - STATE_PATH.length());
+        }
+
+        final String state = states.get(name);
+        final byte[] response;
+        final int status;
+        if (state == null)
+        {
+            status = HttpURLConnection.HTTP_NOT_FOUND;
+            response = ("Item " + name + " does not exist!").getBytes(StandardCharsets.UTF_8);
+        }
+        else if (stateOnly)
+        {
+            status = HttpURLConnection.HTTP_OK;
+            response = state.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        }
+        else
+        {
+            status = HttpURLConnection.HTTP_OK;
+            response = ("{\"link\":\"" + getUrl() + ITEMS_PATH + name + "\",\"state\":\"" + state
+                    + "\",\"stateDescription\":{\"pattern\":\"%.1f\",\"readOnly\":false,\"options\":[]},"
+                    + "\"type\":\"Number\",\"name\":\"" + name + "\",\"label\":\"" + name
+                    + "\",\"category\":\"temperature\",\"tags\":[],\"groupNames\":[\"Salon\"]}")
+                            .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+
+        bytes.addAndGet(response.length);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream output = exchange.getResponseBody())
+        {
+            output.write(response);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+    }
+
+    /**
+     * Compares, against the stub, reading item states with {@link ItemStateClient} and reading full items as JSON.
+     * Prints bytes transferred and bytes allocated per poll.
+     *
+     * @param args
+     *            [polls count]
+     * @throws IOException
+     *             on network error
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int polls = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+        final String[] items = { "Maison_mode", "Salon_Temperature2", "Salon_Humidity2" };
+
+        try (RestStub stub = new RestStub(); ItemStateClient client = new ItemStateClient(stub.getUrl()))
+        {
+            stub.setState(items[0], "0");
+            stub.setState(items[1], "21.3");
+            stub.setState(items[2], "45.6");
+
+            for (int pass = 0; pass < 2; pass++)
+            {
+                // First pass warms up
+                final boolean print = (pass == 1);
+
+                measure(stub, "Item JSON, 1 item", polls, print, () -> readJson(stub.getUrl(), items[0]));
+                measure(stub, "Item state, 1 item", polls, print, () -> client.state(items[0]));
+                measure(stub, "Item JSON, 3 items", polls, print, () -> {
+                    for (final String item : items)
+                    {
+                        readJson(stub.getUrl(), item);
+                    }
+                });
+                measure(stub, "Item states, 3 items", polls, print, () -> client.states(items));
+            }
+        }
+    }
+
+    private interface Poll
+    {
+        void run() throws IOException;
+    }
+
+    private static void readJson(final String url, final String item) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url + ITEMS_PATH + item).openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        try (InputStream input = connection.getInputStream())
+        {
+            final byte[] buffer = new byte[1024];
+            while (input.read(buffer) >= 0)
+            {
+                // Read all
+            }
+        }
+    }
+
+    private static void measure(final RestStub stub, final String name, final int polls, final boolean print,
+            final Poll poll) throws IOException
+    {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final boolean allocation = (threads instanceof com.sun.management.ThreadMXBean);
+
+        stub.reset();
+        final long allocatedBefore = (allocation
+                ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) : 0);
+        final long start = System.nanoTime();
+        for (int i = 0; i < polls; i++)
+        {
+            poll.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = (allocation
+                ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) : 0) - allocatedBefore;
+
+        if (print)
+        {
+            System.out.println(name + ": " + (stub.getBytes() / polls) + " body bytes/poll, "
+                    + (allocation ? (allocated / polls) + " allocated bytes/poll, " : "") + (elapsed / polls / 1000)
+                    + "us/poll, " + stub.getConnections() + " connection(s)");
+        }
+    }
+}